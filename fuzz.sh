@@ -5,4 +5,37 @@
 JAVA=${JAVA:=java}
 echo Using: $JAVA
 
-$JAVA -Dorg.slf4j.simpleLogger.defaultLogLevel=ERROR -jar ./target/confuzzion-1.0-SNAPSHOT-jar-with-dependencies.jar $@
+# Output folder of the campaign, resumed after recycling the JVM
+output=confuzzionResults/
+prev=
+for arg in "$@"; do
+    case $prev in
+        -o|--output) output=$arg ;;
+    esac
+    prev=$arg
+done
+
+# Exit code 75: too many stuck threads with --threads, start a new JVM
+while true; do
+    $JAVA -Dorg.slf4j.simpleLogger.defaultLogLevel=ERROR -jar ./target/confuzzion-1.0-SNAPSHOT-jar-with-dependencies.jar "$@"
+    status=$?
+    if [ $status -ne 75 ]; then
+        exit $status
+    fi
+    echo Recycling JVM
+    # Resume from the checkpoint written before exiting, instead of any
+    # --resume given on the command line
+    prev=
+    for arg in "$@"; do
+        shift
+        if [ "$arg" = "--resume" ]; then
+            prev=$arg
+            continue
+        fi
+        if [ "$prev" != "--resume" ]; then
+            set -- "$@" "$arg"
+        fi
+        prev=$arg
+    done
+    set -- "$@" --resume "$output"
+done
@@ -0,0 +1,11 @@
+#!/bin/sh
+
+# Usage: replay.sh -i confuzzionResults/journal.bin [-n iteration] [-o output]
+# Use the same JAVA as the campaign
+
+JAVA=${JAVA:=java}
+echo Using: $JAVA
+
+cd "$(dirname "$0")"
+
+$JAVA -Dorg.slf4j.simpleLogger.defaultLogLevel=INFO -cp target/confuzzion-1.0-SNAPSHOT-jar-with-dependencies.jar confuzzion.Replay "$@"
@@ -0,0 +1,63 @@
+package confuzzion;
+
+/**
+ * Timeout of program executions derived from the latencies of previous
+ * successful executions: a high percentile of the latencies multiplied by a
+ * safety factor, bounded by a floor and a ceiling.
+ * Latencies are tracked for the whole campaign and for each target method,
+ * so programs calling a slow method get a longer timeout.
+ */
+public class AdaptiveTimeout {
+    private static final long MIN_SAMPLES = 30;
+
+    private LatencyHistogram campaignLatencies;
+    private double percentile;
+    private double factor;
+    private long floor;
+    private long ceiling;
+
+    /**
+     * Constructor
+     * @param percentile percentile of latencies to use (ex: 0.99)
+     * @param factor     safety factor applied to the percentile
+     * @param floor      minimal timeout in ms
+     * @param ceiling    maximal timeout in ms, also used until enough
+     *                   latencies are known
+     */
+    public AdaptiveTimeout(double percentile, double factor, long floor, long ceiling) {
+        this.campaignLatencies = new LatencyHistogram();
+        this.percentile = percentile;
+        this.factor = factor;
+        this.floor = floor;
+        this.ceiling = ceiling;
+    }
+
+    /**
+     * Get the timeout for the next execution
+     * @param method target method called by the mutation, may be null
+     * @return timeout in ms
+     */
+    public long getTimeout(MethodComplexity method) {
+        LatencyHistogram latencies = campaignLatencies;
+        if (method != null && method.getLatencies().getSamples() >= MIN_SAMPLES) {
+            latencies = method.getLatencies();
+        }
+        if (latencies.getSamples() < MIN_SAMPLES) {
+            return ceiling;
+        }
+        long timeout = (long)Math.ceil(latencies.getPercentile(percentile) * factor);
+        return Math.max(floor, Math.min(ceiling, timeout));
+    }
+
+    /**
+     * Record the latency of a successful execution
+     * @param method     target method called by the mutation, may be null
+     * @param miliseconds latency of the execution
+     */
+    public void addLatency(MethodComplexity method, long miliseconds) {
+        campaignLatencies.addLatency(miliseconds);
+        if (method != null) {
+            method.getLatencies().addLatency(miliseconds);
+        }
+    }
+}
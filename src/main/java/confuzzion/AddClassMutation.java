@@ -1,6 +1,10 @@
 package confuzzion;
 
 import soot.Scene;
+import soot.Value;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class AddClassMutation extends ProgramMutation {
     private Mutant addedClass;
@@ -15,10 +19,28 @@ public class AddClassMutation extends ProgramMutation {
     public void undo() {
         this.program.removeClass(addedClass);
         Scene.v().removeClass(addedClass.getSootClass());
+        TypeHierarchy.v().invalidate(addedClass.getSootClass());
+    }
+
+    @Override
+    public void redo() {
+        Scene.v().addClass(addedClass.getSootClass());
+        TypeHierarchy.v().invalidate(addedClass.getSootClass());
+        this.program.addMutant(addedClass);
     }
 
     @Override
     public void randomConstants() {
         // Nothing to do
     }
+
+    @Override
+    public List<Value> getConstants() {
+        return new ArrayList<Value>();
+    }
+
+    @Override
+    public void setConstants(List<Value> constants) {
+        // Nothing to do
+    }
 }
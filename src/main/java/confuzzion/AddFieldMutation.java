@@ -4,6 +4,9 @@ import soot.SootClass;
 import soot.SootField;
 import soot.SootMethod;
 import soot.Type;
+import soot.Value;
+
+import java.util.List;
 
 public class AddFieldMutation extends ClassMutation {
     private SootField addedField;
@@ -19,6 +22,8 @@ public class AddFieldMutation extends ClassMutation {
         int modifiers = rand.randModifiers(true, true);
         this.addedField = new SootField(name, type, modifiers);
         sootClass.addField(this.addedField);
+        LocalIndex.fieldsChanged();
+        Mutant.setDirty(sootClass);
 
         // Call constructor inside <clinit> or <init>
         SootMethod meth = null;
@@ -32,6 +37,8 @@ public class AddFieldMutation extends ClassMutation {
             initializeMutation = new InitializeMutation(rand, meth, addedField);
         } catch(MutationException e) {
             sootClass.removeField(this.addedField);
+            LocalIndex.fieldsChanged();
+            Mutant.setDirty(sootClass);
             throw e;
         }
     }
@@ -40,10 +47,30 @@ public class AddFieldMutation extends ClassMutation {
     public void undo() {
         initializeMutation.undo();
         sootClass.removeField(this.addedField);
+        LocalIndex.fieldsChanged();
+        Mutant.setDirty(sootClass);
+    }
+
+    @Override
+    public void redo() {
+        sootClass.addField(this.addedField);
+        LocalIndex.fieldsChanged();
+        initializeMutation.redo();
+        Mutant.setDirty(sootClass);
     }
 
     @Override
     public void randomConstants() {
         initializeMutation.randomConstants();
     }
+
+    @Override
+    public List<Value> getConstants() {
+        return initializeMutation.getConstants();
+    }
+
+    @Override
+    public void setConstants(List<Value> constants) {
+        initializeMutation.setConstants(constants);
+    }
 }
@@ -10,6 +10,7 @@ import soot.jimple.Jimple;
 import soot.jimple.JimpleBody;
 import soot.jimple.NullConstant;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class AddMethodMutation extends ClassMutation {
@@ -91,6 +92,7 @@ public class AddMethodMutation extends ClassMutation {
         }
 
         sootClass.addMethod(addedMethod);
+        Mutant.setDirty(sootClass);
     }
 
     public AddMethodMutation(RandomGenerator rand, SootClass sootClass, SootMethod superMethod) throws MutationException {
@@ -100,6 +102,13 @@ public class AddMethodMutation extends ClassMutation {
     @Override
     public void undo() {
         sootClass.removeMethod(addedMethod);
+        Mutant.setDirty(sootClass);
+    }
+
+    @Override
+    public void redo() {
+        sootClass.addMethod(addedMethod);
+        Mutant.setDirty(sootClass);
     }
 
     @Override
@@ -108,4 +117,19 @@ public class AddMethodMutation extends ClassMutation {
             addedMutation.randomConstants();
         }
     }
+
+    @Override
+    public List<Value> getConstants() {
+        if (addedMutation != null) {
+            return addedMutation.getConstants();
+        }
+        return new ArrayList<Value>();
+    }
+
+    @Override
+    public void setConstants(List<Value> constants) {
+        if (addedMutation != null) {
+            addedMutation.setConstants(constants);
+        }
+    }
 }
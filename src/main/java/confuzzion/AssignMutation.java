@@ -2,7 +2,7 @@ package confuzzion;
 
 import soot.Body;
 import soot.Local;
-import soot.Scene;
+import soot.RefType;
 import soot.SootMethod;
 import soot.Type;
 import soot.jimple.Jimple;
@@ -18,7 +18,7 @@ public class AssignMutation extends MethodMutation {
             throw new MutationException(AssignMutation.class,
                 "No local inside body.");
         }
-        Local localBefore = rand.randLocalRef(body.getLocals(), false);
+        Local localBefore = rand.randLocalRef(LocalIndex.of(body), false);
         if (localBefore == null) {
             throw new MutationException(AssignMutation.class,
                 "No useful reference inside body.");
@@ -28,7 +28,7 @@ public class AssignMutation extends MethodMutation {
         Type typeAfter = rand.randRefType(method.getDeclaringClass().getName());
         if (!allow_unsafe_assignment || rand.nextBoolean()) {
             // Do a valid assignment to a common parent class
-            typeAfter = typeBefore.merge(typeAfter, Scene.v());
+            typeAfter = TypeHierarchy.v().leastCommonSuperclass((RefType)typeBefore, (RefType)typeAfter);
         } //else: do a direct assignment between typeBefore and typeAfter
         Local localAfter =
             Jimple.v().newLocal("local" + rand.nextIncrement(), typeAfter);
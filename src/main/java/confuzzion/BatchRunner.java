@@ -0,0 +1,123 @@
+package confuzzion;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Execute a batch of programs inside one child JVM.
+ * Each program is a sub folder of the batch folder named after its index,
+ * is loaded by its own class loader and runs in its own thread watched by
+ * a timeout. The index and the ExecutionResult of each program are appended
+ * to the result table of the batch folder after each program, so the parent
+ * knows which programs were executed even if the JVM exits during the batch.
+ * This class only depends on the JDK and on other runtime classes as it is
+ * loaded by the child JVM.
+ */
+public class BatchRunner {
+    public static final String RESULTS_FILE = "results.bin";
+
+    /**
+     * Run a batch of programs
+     * @param args timeout in ms, batch folder, number of programs, then the
+     *             names of the classes to instantiate in order
+     */
+    public static void main(String args[]) {
+        long timeout = Long.parseLong(args[0]);
+        File batchFolder = new File(args[1]);
+        int numberOfPrograms = Integer.parseInt(args[2]);
+        final String[] classNames = new String[args.length - 3];
+        System.arraycopy(args, 3, classNames, 0, classNames.length);
+
+        // Output of programs is kept in memory
+        ExecutionResult.BoundedOutput programOutput = new ExecutionResult.BoundedOutput();
+        PrintStream programStream = new PrintStream(programOutput, true);
+        System.setOut(programStream);
+        System.setErr(programStream);
+
+        DataOutputStream results = null;
+        try {
+            results = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(new File(batchFolder, RESULTS_FILE))));
+            for (int i = 0; i < numberOfPrograms; i++) {
+                URL url = new File(batchFolder, Integer.toString(i)).toURI().toURL();
+                final ClassLoader loader = new URLClassLoader(new URL[] {url},
+                        BatchRunner.class.getClassLoader());
+                final ExecutionResult[] result = new ExecutionResult[] {new ExecutionResult(Status.INTERRUPTED)};
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        result[0] = ExecutionResult.execute(loader, classNames);
+                    }
+                });
+                thread.setDaemon(true);
+                programOutput.reset();
+                thread.start();
+                thread.join(timeout);
+                result[0].setOutput(programOutput.toString());
+                results.writeInt(i);
+                result[0].write(results);
+                results.flush();
+                if (thread.isAlive()) {
+                    // Cannot stop the program reliably, end of the batch
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace(new PrintStream(new FileOutputStream(FileDescriptor.err)));
+        } finally {
+            if (results != null) {
+                try {
+                    results.close();
+                } catch (IOException e) {
+                    // Nothing to do
+                }
+            }
+        }
+        Runtime.getRuntime().halt(0);
+    }
+
+    /**
+     * Select the most interesting program of a batch: the first violation,
+     * else the first success, else the last executed program
+     * @param results result of each program of the batch
+     * @return index of the selected program
+     */
+    public static int select(ExecutionResult[] results) {
+        int firstSuccess = -1;
+        int lastExecuted = 0;
+        for (int i = 0; i < results.length; i++) {
+            Status status = results[i].getStatus();
+            if (status == Status.VIOLATES) {
+                return i;
+            } else if (status == Status.SUCCESS && firstSuccess < 0) {
+                firstSuccess = i;
+            }
+            if (status != Status.NOTEXECUTED) {
+                lastExecuted = i;
+            }
+        }
+        return firstSuccess >= 0 ? firstSuccess : lastExecuted;
+    }
+
+    /**
+     * Count programs of a batch that were executed
+     * @param results result of each program of the batch
+     * @return number of executions
+     */
+    public static int countExecuted(ExecutionResult[] results) {
+        int executed = 0;
+        for (ExecutionResult result : results) {
+            if (result.getStatus() != Status.NOTEXECUTED) {
+                executed++;
+            }
+        }
+        return executed;
+    }
+}
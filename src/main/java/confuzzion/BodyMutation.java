@@ -2,8 +2,8 @@ package confuzzion;
 
 import soot.Body;
 import soot.Local;
+import soot.SootMethod;
 import soot.Unit;
-import soot.UnitPatchingChain;
 import soot.ValueBox;
 import soot.util.Chain;
 
@@ -15,30 +15,95 @@ public class BodyMutation {
     private ArrayList<Local> addedLocals;
     private ArrayList<Unit> addedUnits;
     private Unit uReturn;
+    private boolean applied;
+    // Successors of locals and units when they were removed, used by redo()
+    private ArrayList<Local> localsSuccessors;
+    private ArrayList<Unit> unitsSuccessors;
 
     public BodyMutation(Body body) {
         this.body = body;
         this.addedLocals = new ArrayList<Local>(10);
         this.addedUnits = new ArrayList<Unit>(10);
         this.uReturn = body.getUnits().getLast();
+        this.applied = true;
+        this.localsSuccessors = null;
+        this.unitsSuccessors = null;
     }
 
+    /**
+     * Remove added locals and units from the body. They are kept to be added
+     * again at the same place by redo().
+     */
     public void undo() {
+        if (!applied) {
+            return;
+        }
         Chain<Local> locals = this.body.getLocals();
+        localsSuccessors = new ArrayList<Local>(addedLocals.size());
         for (Local local : addedLocals) {
-            locals.remove(local);
+            localsSuccessors.add(BodyMutation.successorOf(locals, local));
+            LocalIndex.removeLocal(body, local);
         }
-        addedLocals.clear();
-        UnitPatchingChain units = this.body.getUnits();
+        Chain<Unit> units = this.body.getUnits().getNonPatchingChain();
+        unitsSuccessors = new ArrayList<Unit>(addedUnits.size());
         for (Unit unit : addedUnits) {
-            units.getNonPatchingChain().remove(unit);
+            unitsSuccessors.add(BodyMutation.successorOf(units, unit));
+            units.remove(unit);
+        }
+        applied = false;
+        this.setDirty();
+    }
+
+    /**
+     * Add again locals and units removed by undo()
+     */
+    public void redo() {
+        if (applied) {
+            return;
+        }
+        // Reverse order of undo() so that each successor is in the body
+        Chain<Unit> units = this.body.getUnits().getNonPatchingChain();
+        for (int i = addedUnits.size() - 1; i >= 0; i--) {
+            BodyMutation.insertBefore(units, addedUnits.get(i), unitsSuccessors.get(i));
+        }
+        for (int i = addedLocals.size() - 1; i >= 0; i--) {
+            LocalIndex.insertLocal(body, addedLocals.get(i), localsSuccessors.get(i));
+        }
+        localsSuccessors = null;
+        unitsSuccessors = null;
+        applied = true;
+        this.setDirty();
+    }
+
+    private static <E> E successorOf(Chain<E> chain, E element) {
+        if (chain.getLast() == element) {
+            return null;
+        }
+        return chain.getSuccOf(element);
+    }
+
+    private static <E> void insertBefore(Chain<E> chain, E element, E successor) {
+        if (successor == null) {
+            chain.addLast(element);
+        } else {
+            chain.insertBefore(element, successor);
+        }
+    }
+
+    /**
+     * Mark the class of the body as modified
+     */
+    public void setDirty() {
+        SootMethod method = body.getMethod();
+        if (method.isDeclared()) {
+            Mutant.setDirty(method.getDeclaringClass());
         }
-        addedUnits.clear();
     }
 
     public void addLocal(Local local) {
         this.addedLocals.add(local);
-        this.body.getLocals().add(local);
+        LocalIndex.insertLocal(body, local, null);
+        this.setDirty();
     }
 
     public void addUnit(Unit unit) {
@@ -48,11 +113,13 @@ public class BodyMutation {
     public void addUnitBefore(Unit toInsert, Unit point) {
         this.addedUnits.add(toInsert);
         body.getUnits().getNonPatchingChain().insertBefore(toInsert, point);
+        this.setDirty();
     }
 
     public void addUnitAfter(Unit toInsert, Unit point) {
         this.addedUnits.add(toInsert);
         body.getUnits().insertAfter(toInsert, point);
+        this.setDirty();
     }
 
     public List<Local> getLocals() {
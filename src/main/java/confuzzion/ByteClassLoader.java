@@ -1,14 +1,38 @@
 package confuzzion;
 
 import java.lang.ClassLoader;
+import java.util.HashMap;
 
 public class ByteClassLoader extends ClassLoader {
+    private HashMap<String, byte[]> pendingClasses;
+
     public ByteClassLoader(ClassLoader parent) {
         super(parent);
+        pendingClasses = new HashMap<String, byte[]>();
     }
 
     public Class<?> load(String className, byte[] data) throws ClassNotFoundException {
         this.defineClass(className, data, 0, data.length, null);
         return this.loadClass(className);
     }
+
+    /**
+     * Register the bytecode of a class without defining it. The class is
+     * defined on first use, so classes of a same program can reference each
+     * other whatever the order they are added.
+     * @param className name of the class
+     * @param data      bytecode of the class
+     */
+    public void addClass(String className, byte[] data) {
+        pendingClasses.put(className, data);
+    }
+
+    @Override
+    protected Class<?> findClass(String className) throws ClassNotFoundException {
+        byte[] data = pendingClasses.remove(className);
+        if (data == null) {
+            throw new ClassNotFoundException(className);
+        }
+        return this.defineClass(className, data, 0, data.length, null);
+    }
 }
@@ -9,6 +9,7 @@ import soot.jimple.Jimple;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 public class CallMethodMutation extends MethodMutation {
     private SootMethod calledMethod;
@@ -28,7 +29,7 @@ public class CallMethodMutation extends MethodMutation {
         SootClass sClass = calledMethod.getDeclaringClass();
         RefType type = sClass.getType();
 
-        Local local = rand.randLocal(body.getLocals(), type);
+        Local local = rand.randLocal(LocalIndex.of(body), type);
 
         if (local == null) {
             local = Jimple.v().newLocal("local" + rand.nextIncrement(), rand.randRefType(method.getDeclaringClass().getName()));
@@ -61,6 +62,16 @@ public class CallMethodMutation extends MethodMutation {
         return calledMethod;
     }
 
+    @Override
+    public List<SootMethod> getRecipes() {
+        if (initializeMutation == null) {
+            return super.getRecipes();
+        }
+        ArrayList<SootMethod> recipes = new ArrayList<SootMethod>(super.getRecipes());
+        recipes.addAll(initializeMutation.getRecipes());
+        return recipes;
+    }
+
     @Override
     public void undo() {
         if (addsNewMethodCall) {
@@ -71,4 +82,15 @@ public class CallMethodMutation extends MethodMutation {
         }
         mutation.undo();
     }
+
+    @Override
+    public void redo() {
+        mutation.redo();
+        if (initializeMutation != null) {
+            initializeMutation.redo();
+        }
+        if (addsNewMethodCall) {
+            methodsSet.add(calledMethod);
+        }
+    }
 }
@@ -0,0 +1,165 @@
+package confuzzion;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class Data Sharing (AppCDS) archive of the classes loaded by child JVMs,
+ * one per target java.home, to reduce the startup time and the memory of
+ * each child JVM.
+ * The list of classes is recorded by a child JVM instantiating each target
+ * class, then the archive is dumped from this list. Archives are kept in
+ * the temporary folder and reused by next campaigns with the same JVM,
+ * runtime jar and targets.
+ * JVMs older than 11 do not get an archive, only the low-footprint flags.
+ */
+public class CdsArchive {
+    private static final List<String> LOW_FOOTPRINT_FLAGS = Arrays.asList(
+            "-XX:TieredStopAtLevel=1",
+            "-XX:+UseSerialGC",
+            "-XX:-UsePerfData");
+    private static final long DUMP_TIMEOUT = 120000;
+
+    private static HashMap<String, List<String>> options = new HashMap<String, List<String>>();
+    private static final Logger logger = LoggerFactory.getLogger(CdsArchive.class);
+
+    /**
+     * Generate, or reuse, the archive of a target JVM
+     * @param javahome target JVM
+     * @param targets  target classes loaded by programs
+     */
+    public static synchronized void prepare(String javahome, String[] targets) {
+        if (options.containsKey(javahome)) {
+            return;
+        }
+        ArrayList<String> jvmOptions = new ArrayList<String>(LOW_FOOTPRINT_FLAGS);
+        int version = CdsArchive.getJavaVersion(javahome);
+        if (version >= 11) {
+            try {
+                Path archive = CdsArchive.generate(javahome, targets);
+                jvmOptions.add("-XX:SharedArchiveFile=" + archive);
+                // Start without the archive if it cannot be mapped
+                jvmOptions.add("-Xshare:auto");
+            } catch (IOException | InterruptedException e) {
+                logger.warn("Cannot generate CDS archive for {}, continuing without it", javahome, e);
+            }
+        } else {
+            logger.info("No CDS archive for {} (Java version {})", javahome, version);
+        }
+        options.put(javahome, Collections.unmodifiableList(jvmOptions));
+    }
+
+    /**
+     * Options to add to the command line of child JVMs
+     * @param javahome target JVM
+     * @return JVM options, empty if prepare() was not called for this JVM
+     */
+    public static synchronized List<String> getOptions(String javahome) {
+        List<String> jvmOptions = options.get(javahome);
+        if (jvmOptions == null) {
+            return Collections.emptyList();
+        }
+        return jvmOptions;
+    }
+
+    private static Path generate(String javahome, String[] targets) throws IOException, InterruptedException {
+        String java = Paths.get(javahome, "bin", "java").toString();
+        String classpath = RuntimeJar.getPath();
+        String key = javahome + "\n" + classpath + "\n" + String.join(":", targets);
+        String name = "confuzzion-cds-" +
+                Util.sha256(key.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        Path tmpFolder = Paths.get(System.getProperty("java.io.tmpdir"));
+        Path archive = tmpFolder.resolve(name + ".jsa");
+        if (Files.exists(archive)) {
+            return archive;
+        }
+
+        Path classList = Files.createTempFile(tmpFolder, name, ".classlist");
+        Path tmpArchive = Files.createTempFile(tmpFolder, name, ".tmp");
+        File logFile = tmpFolder.resolve(name + ".log").toFile();
+        try {
+            // Record classes loaded while instantiating the target classes,
+            // one at a time as some of them fail
+            ArrayList<String> command = new ArrayList<String>();
+            command.add(java);
+            command.add("-XX:DumpLoadedClassList=" + classList);
+            command.add("-cp");
+            command.add(classpath);
+            command.add(ExecutorServer.class.getName());
+            command.add(ExecutorServer.RECORD_OPTION);
+            command.addAll(Arrays.asList(targets));
+            CdsArchive.run(command, logFile);
+
+            // Dump the archive
+            command = new ArrayList<String>();
+            command.add(java);
+            command.add("-Xshare:dump");
+            command.add("-XX:SharedClassListFile=" + classList);
+            command.add("-XX:SharedArchiveFile=" + tmpArchive);
+            command.add("-cp");
+            command.add(classpath);
+            int errorCode = CdsArchive.run(command, logFile);
+            if (errorCode != 0 || Files.size(tmpArchive) == 0) {
+                throw new IOException("CDS dump failed with error code " + errorCode + ", see " + logFile);
+            }
+            Files.move(tmpArchive, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(classList);
+            Files.deleteIfExists(tmpArchive);
+        }
+        logger.info("CDS archive: {}", archive);
+        return archive;
+    }
+
+    private static int run(List<String> command, File logFile) throws IOException, InterruptedException {
+        if (logger.isInfoEnabled()) {
+            logger.info("Command: {}", command);
+        }
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+        Process process = processBuilder.start();
+        if (!process.waitFor(DUMP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("Timeout of " + command);
+        }
+        return process.exitValue();
+    }
+
+    /**
+     * Read the major Java version from the release file of a java.home
+     * @param javahome
+     * @return major version (8, 11, 17...) or 0 if unknown
+     */
+    private static int getJavaVersion(String javahome) {
+        Path release = Paths.get(javahome, "release");
+        try {
+            for (String line : Files.readAllLines(release)) {
+                if (line.startsWith("JAVA_VERSION=")) {
+                    String version = line.substring("JAVA_VERSION=".length()).replace("\"", "");
+                    if (version.startsWith("1.")) {
+                        version = version.substring(2);
+                    }
+                    return Integer.parseInt(version.split("[._+-]")[0]);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Cannot read Java version of {}", javahome, e);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,289 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.Stack;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.Body;
+import soot.Value;
+
+/**
+ * Checkpoints of a campaign inside the folder checkpoint of the output
+ * folder. Each checkpoint is a folder with the Jimple files of the program
+ * and a properties file holding the state of the campaign (random source,
+ * statistics of methods, counters).
+ * Stacked mutations reference Soot objects of the run, so the program below
+ * each of them is saved instead: the folder of each level of the stack holds
+ * the Jimple files of the classes which differ from the level above. A
+ * resumed campaign stacks a SavedMutation per level, and loads the program
+ * of a level when they are reverted.
+ * A checkpoint is written to a temporary folder, then the file latest is
+ * atomically replaced to point to it, so a killed fuzzer always leaves a
+ * complete checkpoint behind.
+ */
+public class Checkpoint {
+    private static final String CHECKPOINT_FOLDER = "checkpoint";
+    private static final String LATEST_FILE = "latest";
+    private static final String PROGRAM_FOLDER = "program";
+    private static final String STATE_FILE = "state.properties";
+    private static final String STACK_FOLDER = "stack";
+
+    private Path folder;
+    private long sequence;
+    // Latest checkpoint written or resumed, holding the levels of the
+    // SavedMutation of the stack
+    private Path latest;
+
+    private static final Logger logger = LoggerFactory.getLogger(Checkpoint.class);
+
+    /**
+     * Constructor
+     * @param resultFolder output folder of the campaign
+     */
+    public Checkpoint(Path resultFolder) {
+        this.folder = Paths.get(resultFolder.toAbsolutePath().toString(), CHECKPOINT_FOLDER);
+        this.sequence = 0;
+        this.latest = null;
+    }
+
+    /**
+     * A mutation stacked before the campaign was resumed. It cannot be undone
+     * in place: the program of its level is loaded instead.
+     */
+    public static class SavedMutation extends Mutation {
+        private int level;
+
+        public SavedMutation(RandomGenerator rand, int level) {
+            super(rand);
+            this.level = level;
+        }
+
+        /**
+         * @return number of mutations stacked below this one
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        @Override
+        public void undo() {
+            // Program loaded by the campaign with Checkpoint.writeLevel()
+        }
+
+        @Override
+        public void redo() {
+        }
+
+        @Override
+        public void randomConstants() {
+        }
+
+        @Override
+        public List<Value> getConstants() {
+            return new ArrayList<Value>();
+        }
+
+        @Override
+        public void setConstants(List<Value> constants) {
+        }
+    }
+
+    /**
+     * Write a checkpoint and make it the latest one
+     * @param program the current program, without contracts checks
+     * @param stack   mutations applied to the program, undone then redone
+     * @param state   state of the campaign
+     * @throws IOException
+     */
+    public void write(Program program, Stack<Mutation> stack, Properties state) throws IOException {
+        Files.createDirectories(folder);
+        String name = System.currentTimeMillis() + "-" + sequence++;
+        Path tmpFolder = folder.resolve("." + name);
+        Path programFolder = tmpFolder.resolve(PROGRAM_FOLDER);
+        Files.createDirectories(programFolder);
+        program.saveAsJimpleFiles(programFolder.toString());
+        state.setProperty("classes", String.join(":", program.getClassNames()));
+        state.setProperty("stack", Integer.toString(stack.size()));
+        Path stackFolder = tmpFolder.resolve(STACK_FOLDER);
+        int level = stack.size();
+        HashMap<Body, LocalIndex> indexes = LocalIndex.copyAll();
+        try {
+            HashMap<String, byte[]> above = Checkpoint.getJimples(program);
+            while (level > 0 && !(stack.get(level - 1) instanceof SavedMutation)) {
+                stack.get(level - 1).undo();
+                level--;
+                HashMap<String, byte[]> jimples = Checkpoint.getJimples(program);
+                Path levelFolder = stackFolder.resolve(Integer.toString(level));
+                Files.createDirectories(levelFolder);
+                for (String className : jimples.keySet()) {
+                    if (!Arrays.equals(jimples.get(className), above.get(className))) {
+                        Files.write(levelFolder.resolve(className + ".jimple"), jimples.get(className));
+                    }
+                }
+                state.setProperty("stack." + level, String.join(":", program.getClassNames()));
+                above = jimples;
+            }
+        } finally {
+            for (int i = level; i < stack.size(); i++) {
+                stack.get(i).redo();
+            }
+            LocalIndex.restoreAll(indexes);
+        }
+        if (level > 0) {
+            // Levels below the mutations of this run, from the resumed checkpoint
+            Properties latestState = Checkpoint.readState(latest);
+            for (int i = 0; i < level; i++) {
+                Checkpoint.copyFiles(latest.resolve(STACK_FOLDER).resolve(Integer.toString(i)),
+                        stackFolder.resolve(Integer.toString(i)), null);
+                state.setProperty("stack." + i, latestState.getProperty("stack." + i));
+            }
+        }
+        try (OutputStream output = Files.newOutputStream(tmpFolder.resolve(STATE_FILE))) {
+            state.store(output, "Confuzzion checkpoint");
+        }
+        Files.move(tmpFolder, folder.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+        latest = folder.resolve(name);
+
+        Path tmpLatest = folder.resolve("." + LATEST_FILE);
+        Files.write(tmpLatest, name.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmpLatest, folder.resolve(LATEST_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Checkpoint {} written", name);
+
+        // Remove older checkpoints and leftovers of interrupted writes
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry) && !entry.getFileName().toString().equals(name)) {
+                    Util.deleteDirectory(entry);
+                }
+            }
+        }
+    }
+
+    private static HashMap<String, byte[]> getJimples(Program program) {
+        ArrayList<String> classNames = program.getClassNames();
+        ArrayList<byte[]> jimples = program.toJimples();
+        HashMap<String, byte[]> contents = new HashMap<String, byte[]>();
+        for (int i = 0; i < classNames.size(); i++) {
+            contents.put(classNames.get(i), jimples.get(i));
+        }
+        return contents;
+    }
+
+    /**
+     * Copy the files of a folder
+     * @param source      folder to copy
+     * @param destination created if needed, existing files are replaced
+     * @param classNames  only copy the Jimple files of these classes, all
+     *                    files if null
+     * @throws IOException
+     */
+    private static void copyFiles(Path source, Path destination, List<String> classNames) throws IOException {
+        Files.createDirectories(destination);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+            for (Path entry : entries) {
+                String fileName = entry.getFileName().toString();
+                if (classNames == null ||
+                        classNames.contains(fileName.substring(0, fileName.length() - ".jimple".length()))) {
+                    Files.copy(entry, destination.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resume the stack of a checkpoint
+     * @param checkpoint folder of the checkpoint
+     * @param state      state read from the checkpoint
+     * @param rand       the RandomGenerator of the campaign
+     * @return a SavedMutation per level, the first one at the bottom
+     */
+    public ArrayList<Mutation> resume(Path checkpoint, Properties state, RandomGenerator rand) {
+        latest = checkpoint;
+        int size = Integer.parseInt(state.getProperty("stack", "0"));
+        ArrayList<Mutation> stack = new ArrayList<Mutation>(size);
+        for (int level = 0; level < size; level++) {
+            stack.add(new SavedMutation(rand, level));
+        }
+        return stack;
+    }
+
+    /**
+     * Write the program below a SavedMutation, from the latest checkpoint
+     * @param level       number of mutations below the SavedMutation
+     * @param destination folder receiving the Jimple files of the program
+     * @return classes of the program in their original order
+     * @throws IOException
+     */
+    public List<String> writeLevel(int level, Path destination) throws IOException {
+        Properties state = Checkpoint.readState(latest);
+        List<String> classNames = Arrays.asList(state.getProperty("stack." + level).split(":"));
+        if (Files.exists(destination)) {
+            Util.deleteDirectory(destination);
+        }
+        Checkpoint.copyFiles(latest.resolve(PROGRAM_FOLDER), destination, classNames);
+        // Each level holds the classes which differ from the level above
+        for (int i = Integer.parseInt(state.getProperty("stack")) - 1; i >= level; i--) {
+            Checkpoint.copyFiles(latest.resolve(STACK_FOLDER).resolve(Integer.toString(i)),
+                    destination, classNames);
+        }
+        return classNames;
+    }
+
+    /**
+     * Find the latest checkpoint of a campaign
+     * @param resultFolder output folder of the campaign
+     * @return folder of the checkpoint, or null if there is none
+     * @throws IOException
+     */
+    public static Path findLatest(Path resultFolder) throws IOException {
+        Path folder = Paths.get(resultFolder.toAbsolutePath().toString(), CHECKPOINT_FOLDER);
+        Path latest = folder.resolve(LATEST_FILE);
+        if (!Files.exists(latest)) {
+            return null;
+        }
+        String name = new String(Files.readAllBytes(latest), StandardCharsets.UTF_8).trim();
+        Path checkpoint = folder.resolve(name);
+        if (!Files.isDirectory(checkpoint)) {
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Read the state of a campaign
+     * @param checkpoint folder of the checkpoint
+     * @return state written by write()
+     * @throws IOException
+     */
+    public static Properties readState(Path checkpoint) throws IOException {
+        Properties state = new Properties();
+        try (InputStream input = Files.newInputStream(checkpoint.resolve(STATE_FILE))) {
+            state.load(input);
+        }
+        return state;
+    }
+
+    /**
+     * @param checkpoint folder of the checkpoint
+     * @return folder holding the Jimple files of the program
+     */
+    public static Path getProgramFolder(Path checkpoint) {
+        return checkpoint.resolve(PROGRAM_FOLDER);
+    }
+}
@@ -6,6 +6,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
 import java.util.Stack;
 import java.util.Timer;
 
@@ -14,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import soot.G;
 import soot.Scene;
+import soot.SootMethod;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -25,6 +31,10 @@ import org.apache.commons.cli.ParseException;
 
 public class ConfuzzionMain {
     private Path resultFolder;
+    private SyncDirectory syncDirectory;
+    private Long randomSeed;
+    private Path resumeFolder;
+    private boolean reseed;
 
     private static final long MAIN_LOOP_ITERATIONS = -1; // no limit
     private static final int CONSTANTS_TRIES = 1;
@@ -32,10 +42,50 @@ public class ConfuzzionMain {
     private static final int STACK_LIMIT = Integer.MAX_VALUE;
     private static final boolean WITH_JVM = true;
     private static final long TIMER_TIMEOUT = 1000;
+    private static final int EXECUTOR_MAX_RUNS = 1000;
+    private static final double MUTATIONS_EXPLORATION = 0.1;
     private static final Logger logger = LoggerFactory.getLogger(ConfuzzionMain.class);
 
     public ConfuzzionMain(Path resultFolder) {
         this.resultFolder = resultFolder;
+        this.syncDirectory = null;
+        this.randomSeed = null;
+        this.resumeFolder = null;
+        this.reseed = false;
+    }
+
+    /**
+     * Share interesting programs and violations with other workers
+     * @param syncDirectory folder shared between workers
+     */
+    public void setSyncDirectory(SyncDirectory syncDirectory) {
+        this.syncDirectory = syncDirectory;
+    }
+
+    /**
+     * Use a fixed seed for the RandomGenerator
+     * @param randomSeed seed
+     */
+    public void setRandomSeed(long randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
+    /**
+     * Resume the campaign from the latest checkpoint of a folder
+     * @param resumeFolder output folder of the previous campaign
+     */
+    public void setResumeFolder(Path resumeFolder) {
+        this.resumeFolder = resumeFolder;
+    }
+
+    /**
+     * Draw new random numbers from the seed instead of continuing those of
+     * the checkpoint, so that a campaign resumed after a crash does not
+     * take the same decisions again
+     * @param reseed true to reseed the resumed campaign
+     */
+    public void setReseed(boolean reseed) {
+        this.reseed = reseed;
     }
 
     public static void main(String args[]) {
@@ -70,7 +120,7 @@ public class ConfuzzionMain {
                 constantsTries = Integer.parseInt(line.getOptionValue("c"));
             }
             if (line.hasOption("timeout")) {
-                timeout = Long.parseLong(line.getOptionValue("t"));
+                timeout = Long.parseLong(line.getOptionValue("timeout"));
             }
             if (line.hasOption("l")) {
                 stackLimit = Integer.parseInt(line.getOptionValue("l"));
@@ -95,13 +145,137 @@ public class ConfuzzionMain {
             ConfuzzionOptions.v().fixed_number_of_classes = !line.hasOption("one-class");
             ConfuzzionOptions.v().use_uniform_distribution_for_methods = line.hasOption("uniform-methods-distribution");
             ConfuzzionOptions.v().quiet = line.hasOption("q");
+            if (line.hasOption("executor")) {
+                ConfuzzionOptions.v().executor_max_runs = EXECUTOR_MAX_RUNS;
+            }
+            if (line.hasOption("executor-runs")) {
+                ConfuzzionOptions.v().executor_max_runs = Integer.parseInt(line.getOptionValue("executor-runs"));
+            }
+            ConfuzzionOptions.v().reuse_workspace = line.hasOption("reuse-workspace");
+            ConfuzzionOptions.v().batch_constants = line.hasOption("batch");
+            ConfuzzionOptions.v().use_cds = line.hasOption("cds");
+            ConfuzzionOptions.v().adaptive_timeout = line.hasOption("adaptive-timeout");
+            if (line.hasOption("pool")) {
+                ConfuzzionOptions.v().executor_pool_size = Integer.parseInt(line.getOptionValue("pool"));
+            }
+            if (line.hasOption("quarantine-limit")) {
+                ConfuzzionOptions.v().quarantine_limit = Integer.parseInt(line.getOptionValue("quarantine-limit"));
+            }
+            if (line.hasOption("loaders-limit")) {
+                ConfuzzionOptions.v().live_loaders_limit = Integer.parseInt(line.getOptionValue("loaders-limit"));
+            }
+            if (line.hasOption("metaspace-limit")) {
+                ConfuzzionOptions.v().metaspace_limit = Long.parseLong(line.getOptionValue("metaspace-limit")) * 1024 * 1024;
+            }
+            ConfuzzionOptions.v().write_journal = line.hasOption("journal");
+            ConfuzzionOptions.v().adaptive_mutations = line.hasOption("adaptive-mutations");
+            if (line.hasOption("checkpoint-period")) {
+                ConfuzzionOptions.v().checkpoint_period = Long.parseLong(line.getOptionValue("checkpoint-period"));
+            }
+            if (line.hasOption("sync-period")) {
+                ConfuzzionOptions.v().sync_period = Long.parseLong(line.getOptionValue("sync-period"));
+            }
+            if (line.hasOption("pipeline")) {
+                ConfuzzionOptions.v().pipeline_depth = Integer.parseInt(line.getOptionValue("pipeline"));
+            }
+            if (line.hasOption("speculative")) {
+                ConfuzzionOptions.v().speculative_candidates = Integer.parseInt(line.getOptionValue("speculative"));
+            }
+            if (line.hasOption("cache-size")) {
+                ConfuzzionOptions.v().execution_cache_size = Integer.parseInt(line.getOptionValue("cache-size"));
+            }
+            if (line.hasOption("timeout-percentile")) {
+                ConfuzzionOptions.v().timeout_percentile = Double.parseDouble(line.getOptionValue("timeout-percentile"));
+            }
+            if (line.hasOption("timeout-factor")) {
+                ConfuzzionOptions.v().timeout_factor = Double.parseDouble(line.getOptionValue("timeout-factor"));
+            }
+            if (line.hasOption("timeout-floor")) {
+                ConfuzzionOptions.v().timeout_floor = Long.parseLong(line.getOptionValue("timeout-floor"));
+            }
+            if (line.hasOption("timeout-ceiling")) {
+                ConfuzzionOptions.v().timeout_ceiling = Long.parseLong(line.getOptionValue("timeout-ceiling"));
+            }
 
             if (!Files.exists(resultFolder)) {
                 Files.createDirectories(resultFolder);
             }
 
+            if (line.hasOption("thread-workers")) {
+                // Launch workers as threads of this JVM
+                final long iterations = main_loop_iterations;
+                final long workerTimeout = timeout;
+                final int workerStackLimit = stackLimit;
+                final boolean workerWithJVM = withJVM;
+                final String workerJavahome = javahome;
+                final Path workerSeedFile = seedFile;
+                final int workerConstantsTries = constantsTries;
+                final String[] workerTargets = targets;
+                final boolean workerResume = line.hasOption("resume");
+                long seed = line.hasOption("rng-seed") ?
+                        Long.parseLong(line.getOptionValue("rng-seed")) : new Random().nextLong();
+                WorkersLauncher launcher = new WorkersLauncher(resultFolder,
+                        Integer.parseInt(line.getOptionValue("thread-workers")), seed, null);
+                launcher.runInProcess(new WorkersLauncher.InProcessWorker() {
+                    @Override
+                    public void run(int workerId, Path workerFolder, long seed, SyncDirectory syncDirectory) {
+                        ConfuzzionMain conf = new ConfuzzionMain(workerFolder);
+                        conf.setRandomSeed(seed);
+                        conf.setSyncDirectory(syncDirectory);
+                        if (workerResume) {
+                            conf.setResumeFolder(workerFolder);
+                        }
+                        conf.startMutation(iterations, workerTimeout, workerStackLimit, workerWithJVM,
+                                workerJavahome, workerSeedFile, workerConstantsTries, workerTargets);
+                    }
+                });
+                if (InProcessExecutor.isRecycleRequested()) {
+                    System.exit(InProcessExecutor.RECYCLE_EXIT_CODE);
+                }
+                return;
+            }
+
+            if (line.hasOption("workers")) {
+                // Launch worker processes with the same options
+                ArrayList<String> workerArgs = new ArrayList<String>();
+                for (Option option : line.getOptions()) {
+                    String name = option.getLongOpt();
+                    if (name.equals("workers") || name.equals("output") || name.equals("rng-seed") ||
+                            name.equals("quiet") || name.equals("sync-dir") || name.equals("worker-id") ||
+                            name.equals("resume") || name.equals("reseed")) {
+                        continue;
+                    }
+                    workerArgs.add("--" + name);
+                    if (option.hasArg()) {
+                        workerArgs.add(option.getValue());
+                    }
+                }
+                long seed = line.hasOption("rng-seed") ?
+                        Long.parseLong(line.getOptionValue("rng-seed")) : new Random().nextLong();
+                WorkersLauncher launcher = new WorkersLauncher(resultFolder,
+                        Integer.parseInt(line.getOptionValue("workers")), seed, workerArgs);
+                launcher.setResume(line.hasOption("resume"));
+                launcher.run();
+                return;
+            }
+
             ConfuzzionMain conf = new ConfuzzionMain(resultFolder);
+            if (line.hasOption("rng-seed")) {
+                conf.setRandomSeed(Long.parseLong(line.getOptionValue("rng-seed")));
+            }
+            if (line.hasOption("sync-dir")) {
+                int workerId = Integer.parseInt(line.getOptionValue("worker-id", "0"));
+                conf.setSyncDirectory(new SyncDirectory(Paths.get(line.getOptionValue("sync-dir")), workerId));
+            }
+            if (line.hasOption("resume")) {
+                conf.setResumeFolder(Paths.get(line.getOptionValue("resume")));
+                conf.setReseed(line.hasOption("reseed"));
+            }
             conf.startMutation(main_loop_iterations, timeout, stackLimit, withJVM, javahome, seedFile, constantsTries, targets);
+            if (InProcessExecutor.isRecycleRequested()) {
+                // Too many stuck threads, fuzz.sh starts a new JVM
+                System.exit(InProcessExecutor.RECYCLE_EXIT_CODE);
+            }
         } catch (ParseException e) {
             logger.error("Options parsing failed", e);
             HelpFormatter formatter = new HelpFormatter();
@@ -146,6 +320,140 @@ public class ConfuzzionMain {
                 .required(false)
                 .build();
 
+        final Option poolOption = Option.builder()
+                .longOpt("pool")
+                .desc("Execute programs with a pool of n executor JVMs, using in turn each --jvm / not with --threads")
+                .hasArg(true)
+                .argName("n")
+                .required(false)
+                .build();
+
+        final Option quarantineLimitOption = Option.builder()
+                .longOpt("quarantine-limit")
+                .desc("Stuck threads before exiting with code " + InProcessExecutor.RECYCLE_EXIT_CODE +
+                        " to get a new JVM / with --threads / default 16")
+                .hasArg(true)
+                .argName("n")
+                .required(false)
+                .build();
+
+        final Option loadersLimitOption = Option.builder()
+                .longOpt("loaders-limit")
+                .desc("Live class loaders before replacing worker threads, then recycling the JVM / with --threads / default 1000")
+                .hasArg(true)
+                .argName("n")
+                .required(false)
+                .build();
+
+        final Option metaspaceLimitOption = Option.builder()
+                .longOpt("metaspace-limit")
+                .desc("Metaspace MB before replacing worker threads, then recycling the JVM / with --threads / default no limit")
+                .hasArg(true)
+                .argName("mb")
+                .required(false)
+                .build();
+
+        final Option checkpointPeriodOption = Option.builder()
+                .longOpt("checkpoint-period")
+                .desc("Seconds between checkpoints of the campaign, 0 to disable except before recycling the JVM / default 600")
+                .hasArg(true)
+                .argName("seconds")
+                .required(false)
+                .build();
+
+        final Option journalOption = Option.builder()
+                .longOpt("journal")
+                .desc("Write the seed and every mutation decision to " + Journal.FILE_NAME +
+                        ", replayed by confuzzion.Replay / not with --seed, --resume, --speculative or --pipeline")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Option resumeOption = Option.builder()
+                .longOpt("resume")
+                .desc("Resume from the latest checkpoint of this output folder, or of each worker folder with --workers")
+                .hasArg(true)
+                .argName("dir")
+                .required(false)
+                .build();
+
+        final Option reseedOption = Option.builder()
+                .longOpt("reseed")
+                .desc("With --resume, draw new random numbers from --rng-seed instead of those of the checkpoint")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Option pipelineOption = Option.builder()
+                .longOpt("pipeline")
+                .desc("Generate the next candidate mutations while up to depth candidates execute / not with --threads or --speculative")
+                .hasArg(true)
+                .argName("depth")
+                .required(false)
+                .build();
+
+        final Option speculativeOption = Option.builder()
+                .longOpt("speculative")
+                .desc("Execute in parallel k candidate mutations of the current program and keep a successful one / not with --threads")
+                .hasArg(true)
+                .argName("k")
+                .required(false)
+                .build();
+
+        final Option cacheSizeOption = Option.builder()
+                .longOpt("cache-size")
+                .desc("Number of execution results kept to skip programs with an already executed bytecode / default no cache")
+                .hasArg(true)
+                .argName("size")
+                .required(false)
+                .build();
+
+        final Option adaptiveMutationsOption = Option.builder()
+                .longOpt("adaptive-mutations")
+                .desc("Choose kinds of mutations by their useful executions per second / not with --speculative or --pipeline")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Option adaptiveTimeoutOption = Option.builder()
+                .longOpt("adaptive-timeout")
+                .desc("Derive the timeout from latencies of successful executions, per target method when possible")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Option timeoutPercentileOption = Option.builder()
+                .longOpt("timeout-percentile")
+                .desc("Percentile of latencies used by --adaptive-timeout / 0.99 by default")
+                .hasArg(true)
+                .argName("percentile")
+                .required(false)
+                .build();
+
+        final Option timeoutFactorOption = Option.builder()
+                .longOpt("timeout-factor")
+                .desc("Safety factor applied to the percentile by --adaptive-timeout / 3.0 by default")
+                .hasArg(true)
+                .argName("factor")
+                .required(false)
+                .build();
+
+        final Option timeoutFloorOption = Option.builder()
+                .longOpt("timeout-floor")
+                .desc("Minimal timeout with --adaptive-timeout / 50 ms by default")
+                .hasArg(true)
+                .argName("floor")
+                .required(false)
+                .build();
+
+        final Option timeoutCeilingOption = Option.builder()
+                .longOpt("timeout-ceiling")
+                .desc("Maximal timeout with --adaptive-timeout / --timeout by default")
+                .hasArg(true)
+                .argName("ceiling")
+                .required(false)
+                .build();
+
         final Option runnerOption = Option.builder()
                 .longOpt("threads")
                 .desc("Use threads in spite of JVM to run programs")
@@ -153,9 +461,45 @@ public class ConfuzzionMain {
                 .required(false)
                 .build();
 
+        final Option executorOption = Option.builder()
+                .longOpt("executor")
+                .desc("Execute programs inside a long-lived JVM instead of one JVM per execution")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Option executorRunsOption = Option.builder()
+                .longOpt("executor-runs")
+                .desc("Executions before restarting the executor JVM / implies --executor / default " + EXECUTOR_MAX_RUNS)
+                .hasArg(true)
+                .argName("runs")
+                .required(false)
+                .build();
+
+        final Option workspaceOption = Option.builder()
+                .longOpt("reuse-workspace")
+                .desc("Reuse one folder for all JVM executions and only write modified class files")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Option batchOption = Option.builder()
+                .longOpt("batch")
+                .desc("Execute all --constants-tries variants of a mutation within one JVM")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Option cdsOption = Option.builder()
+                .longOpt("cds")
+                .desc("Start child JVMs with a class data sharing archive and low-footprint flags")
+                .hasArg(false)
+                .required(false)
+                .build();
+
         final Option jvmOption = Option.builder("j")
                 .longOpt("jvm")
-                .desc("JAVA_HOME for execution when not using --threads")
+                .desc("JAVA_HOME for execution when not using --threads / comma-separated list for --pool")
                 .hasArg(true)
                 .argName("jvm")
                 .required(false)
@@ -228,6 +572,54 @@ public class ConfuzzionMain {
                 .required(false)
                 .build();
 
+        final Option workersOption = Option.builder()
+                .longOpt("workers")
+                .desc("Launch this number of worker processes sharing programs and violations")
+                .hasArg(true)
+                .argName("workers")
+                .required(false)
+                .build();
+
+        final Option threadWorkersOption = Option.builder()
+                .longOpt("thread-workers")
+                .desc("Launch this number of workers as threads of this JVM, each one with its own Soot context")
+                .hasArg(true)
+                .argName("workers")
+                .required(false)
+                .build();
+
+        final Option syncDirOption = Option.builder()
+                .longOpt("sync-dir")
+                .desc("Folder shared with other workers (set by --workers)")
+                .hasArg(true)
+                .argName("sync-dir")
+                .required(false)
+                .build();
+
+        final Option syncPeriodOption = Option.builder()
+                .longOpt("sync-period")
+                .desc("Seconds between switches of a worker to a program of the shared queue, 0 to only switch when stalled / default 300")
+                .hasArg(true)
+                .argName("seconds")
+                .required(false)
+                .build();
+
+        final Option workerIdOption = Option.builder()
+                .longOpt("worker-id")
+                .desc("Identifier of this worker (set by --workers)")
+                .hasArg(true)
+                .argName("worker-id")
+                .required(false)
+                .build();
+
+        final Option rngSeedOption = Option.builder()
+                .longOpt("rng-seed")
+                .desc("Seed of the random generator / random by default")
+                .hasArg(true)
+                .argName("rng-seed")
+                .required(false)
+                .build();
+
         final Option targetClassesOption = Option.builder("t")
                 .longOpt("targets")
                 .desc("List of target classes in Java form separated by ':'")
@@ -249,7 +641,29 @@ public class ConfuzzionMain {
         options.addOption(iterationsOption);
         options.addOption(constantsTriesOption);
         options.addOption(timeoutOption);
+        options.addOption(poolOption);
+        options.addOption(speculativeOption);
+        options.addOption(pipelineOption);
+        options.addOption(quarantineLimitOption);
+        options.addOption(checkpointPeriodOption);
+        options.addOption(resumeOption);
+        options.addOption(reseedOption);
+        options.addOption(journalOption);
+        options.addOption(loadersLimitOption);
+        options.addOption(metaspaceLimitOption);
+        options.addOption(cacheSizeOption);
+        options.addOption(adaptiveMutationsOption);
+        options.addOption(adaptiveTimeoutOption);
+        options.addOption(timeoutPercentileOption);
+        options.addOption(timeoutFactorOption);
+        options.addOption(timeoutFloorOption);
+        options.addOption(timeoutCeilingOption);
         options.addOption(runnerOption);
+        options.addOption(executorOption);
+        options.addOption(executorRunsOption);
+        options.addOption(workspaceOption);
+        options.addOption(batchOption);
+        options.addOption(cdsOption);
         options.addOption(jvmOption);
         options.addOption(stackLimitOption);
         options.addOption(seedOption);
@@ -260,6 +674,12 @@ public class ConfuzzionMain {
         options.addOption(startWithOneClass);
         options.addOption(uniformMethodsDistribution);
         options.addOption(quietOption);
+        options.addOption(workersOption);
+        options.addOption(threadWorkersOption);
+        options.addOption(syncDirOption);
+        options.addOption(syncPeriodOption);
+        options.addOption(workerIdOption);
+        options.addOption(rngSeedOption);
         options.addOption(targetClassesOption);
         options.addOption(helpOption);
 
@@ -267,45 +687,116 @@ public class ConfuzzionMain {
     }
 
     public void startMutation(long mainloop_turn, long timeout, int stackLimit, boolean withJVM, String javahome, Path seedFolder, int constants_tries, String targets[]) {
-        G.reset();
-        soot.options.Options.v().set_weak_map_structures(true);
-        Scene.v().loadBasicClasses();
-        Scene.v().extendSootClassPath(Util.getJarPath());
+        // Built in a Soot context reset below
+        ImplementorIndex.load();
+        ConfuzzionMain.resetSootContext();
         logger.info("Soot Class Path: {}", Scene.v().getSootClassPath());
         logger.info("Default java.home: {}", System.getProperty("java.home"));
         logger.info("Target java.home: {}", javahome);
 
-        RandomGenerator rand = new RandomGenerator(targets);
-
-        Program currentProg = null;
-        if (seedFolder != null) {
-            logger.info("Seed folder: {}", seedFolder);
-            Scene.v().extendSootClassPath(seedFolder.toString());
-            currentProg = new Program(rand, "Test", false);
-
-            // Load all classes (.jimple/.class) in folder except the seed
-            File folderFile = seedFolder.toFile();
-            File[] listFiles = folderFile.listFiles();
-            for (int i = listFiles.length - 1; i >= 0; i--) {
-                File fileEntry = listFiles[i];
-                if (fileEntry.isFile()) {
-                    String filename = fileEntry.getName();
-
-                    if (filename.endsWith(".jimple") || filename.endsWith(".class")) {
-                        filename = filename.substring(0, filename.lastIndexOf("."));
-                    } else {
-                        continue;
-                    }
+        // A seed is always chosen so that the campaign can be replayed
+        long seed = randomSeed != null ? randomSeed : new Random().nextLong();
+        logger.info("Random seed: {}", seed);
+        RandomGenerator rand = new RandomGenerator(targets, new Random(seed));
 
-                    logger.info("Loading class {}", filename);
-                    Mutant mut = Mutant.loadClass(filename);
-                    mut.fixClass();
-                    currentProg.addMutant(mut);
-                    if (logger.isDebugEnabled()) {
-                        logger.debug(mut.toString());
-                    }
+        // State of the campaign to resume
+        Path checkpointFolder = null;
+        Properties resumeState = null;
+        if (resumeFolder != null) {
+            try {
+                checkpointFolder = Checkpoint.findLatest(resumeFolder);
+                if (checkpointFolder != null) {
+                    logger.info("Resuming from checkpoint {}", checkpointFolder);
+                    resumeState = Checkpoint.readState(checkpointFolder);
+                } else {
+                    logger.warn("No checkpoint in {}, starting a new campaign", resumeFolder);
                 }
+            } catch (IOException e) {
+                logger.error("Error while reading checkpoint", e);
+                return;
+            }
+        }
+
+        if (seedFolder == null && syncDirectory != null && resumeState == null) {
+            // Start from a program found by another worker
+            try {
+                seedFolder = syncDirectory.pickProgram(rand);
+            } catch (IOException e) {
+                logger.warn("Cannot read shared queue", e);
+            }
+        }
+
+        // The pool uses every JVM, other modes the first one
+        String[] javahomes = javahome.split(",");
+        javahome = javahomes[0];
+        if (withJVM && ConfuzzionOptions.v().use_cds) {
+            for (String home : javahomes) {
+                CdsArchive.prepare(home, targets);
             }
+        }
+
+        // Pool of executor JVMs, shared with speculative candidates
+        ExecutorPool pool = null;
+        int poolSize = ConfuzzionOptions.v().executor_pool_size;
+        if (poolSize <= 0 && ConfuzzionOptions.v().speculative_candidates > 1) {
+            poolSize = ConfuzzionOptions.v().speculative_candidates;
+        } else if (poolSize <= 0 && ConfuzzionOptions.v().pipeline_depth > 0) {
+            poolSize = ConfuzzionOptions.v().pipeline_depth;
+        }
+        if (withJVM && poolSize > 0) {
+            int maxRuns = ConfuzzionOptions.v().executor_max_runs;
+            pool = new ExecutorPool(javahomes, poolSize,
+                    maxRuns > 0 ? maxRuns : EXECUTOR_MAX_RUNS, resultFolder);
+        }
+        // Long-lived executor JVM, else one JVM per execution
+        Executor executor = null;
+        if (withJVM && pool == null && ConfuzzionOptions.v().executor_max_runs > 0) {
+            executor = new Executor(javahome,
+                    ConfuzzionOptions.v().executor_max_runs,
+                    Paths.get(resultFolder.toAbsolutePath().toString(), "executor-stderr.txt").toFile());
+        }
+        // One folder reused for all executions
+        Workspace workspace = null;
+        if (withJVM && pool == null && executor == null && ConfuzzionOptions.v().reuse_workspace) {
+            try {
+                workspace = new Workspace(Paths.get(resultFolder.toAbsolutePath().toString(), "workspace"));
+            } catch (IOException e) {
+                logger.error("Error while creating workspace", e);
+                return;
+            }
+        }
+        // All variants of constants executed by one JVM
+        Path batchFolder = null;
+        if (withJVM && pool == null && executor == null && workspace == null && ConfuzzionOptions.v().batch_constants) {
+            batchFolder = Paths.get(resultFolder.toAbsolutePath().toString(), "batch");
+        }
+        // Programs executed by worker threads of this JVM
+        InProcessExecutor inProcessExecutor = null;
+        if (!withJVM) {
+            inProcessExecutor = new InProcessExecutor(ConfuzzionOptions.v().quarantine_limit,
+                    ConfuzzionOptions.v().live_loaders_limit,
+                    ConfuzzionOptions.v().metaspace_limit);
+        }
+        // Class files are written to a new folder before each execution
+        final boolean useFolder = withJVM && pool == null && executor == null && workspace == null && batchFolder == null;
+
+        Program currentProg = null;
+        if (resumeState != null) {
+            // Classes are loaded in their original order
+            currentProg = ConfuzzionMain.loadProgram(rand, Checkpoint.getProgramFolder(checkpointFolder),
+                    Arrays.asList(resumeState.getProperty("classes").split(":")));
+            try {
+                rand.restoreState(resumeState);
+            } catch (IOException e) {
+                logger.error("Error while restoring random generator", e);
+                return;
+            }
+            if (reseed) {
+                rand.setSeed(seed);
+            }
+        } else if (seedFolder != null) {
+            logger.info("Seed folder: {}", seedFolder);
+            currentProg = ConfuzzionMain.loadProgram(rand, seedFolder, ConfuzzionMain.listClasses(seedFolder));
 
             // Check all bodies for type confusion
             ArrayList<BodyMutation> bodyMutations = currentProg.addContractCheckAllBodies(new ContractTypeConfusion());
@@ -318,10 +809,14 @@ public class ConfuzzionMain {
                     return;
                 }
                 // Instantiation and launch
-                if (withJVM) {
+                if (pool != null) {
+                    currentProg.genAndLaunchWithPool(pool, timeout);
+                } else if (executor != null) {
+                    currentProg.genAndLaunchWithExecutor(executor, timeout);
+                } else if (withJVM) {
                     currentProg.genAndLaunchWithJVM(javahome, tmpFolder.toString(), timeout);
                 } else { //with threads
-                    currentProg.genAndLaunch(timeout);
+                    currentProg.genAndLaunch(inProcessExecutor, timeout);
                 }
                 currentProg.removeContractsChecks(bodyMutations);
             } catch(Throwable e) {
@@ -332,6 +827,12 @@ public class ConfuzzionMain {
                 } else {
                     logger.error("Error while using seed for the first time", e);
                 }
+                if (executor != null) {
+                    executor.stop();
+                }
+                if (pool != null) {
+                    pool.stop();
+                }
                 return;
             }
         } else {
@@ -348,25 +849,231 @@ public class ConfuzzionMain {
         ArrayList<Contract> contracts = new ArrayList<Contract>(1);
         contracts.add(new ContractTypeConfusion());
         Stack<Mutation> mutationsStack = new Stack<Mutation>();
+        // Mutations of the resumed campaign, reverted by loading the saved
+        // program below them
+        Checkpoint checkpoint = new Checkpoint(resultFolder);
+        if (resumeState != null) {
+            mutationsStack.addAll(checkpoint.resume(checkpointFolder, resumeState, rand));
+        }
+        // Target methods already called by a committed mutation
+        HashSet<SootMethod> calledMethods = new HashSet<SootMethod>();
+
+        // Timeout derived from latencies, else fixed timeout
+        AdaptiveTimeout adaptiveTimeout = null;
+        if (ConfuzzionOptions.v().adaptive_timeout) {
+            long ceiling = ConfuzzionOptions.v().timeout_ceiling;
+            adaptiveTimeout = new AdaptiveTimeout(ConfuzzionOptions.v().timeout_percentile,
+                    ConfuzzionOptions.v().timeout_factor,
+                    ConfuzzionOptions.v().timeout_floor,
+                    ceiling > 0 ? ceiling : timeout);
+        }
+
+        // Results of programs already executed
+        ExecutionCache executionCache = null;
+        if (ConfuzzionOptions.v().execution_cache_size > 0) {
+            executionCache = new ExecutionCache(ConfuzzionOptions.v().execution_cache_size);
+        }
+
+        // Candidate mutations executed in parallel
+        SpeculativeRunner speculativeRunner = null;
+        if (pool != null && ConfuzzionOptions.v().speculative_candidates > 1) {
+            speculativeRunner = new SpeculativeRunner(pool,
+                    ConfuzzionOptions.v().speculative_candidates,
+                    resultFolder, timeout, adaptiveTimeout, executionCache, syncDirectory);
+        }
+        // Generation of candidates overlapped with their execution
+        PipelineRunner pipelineRunner = null;
+        if (pool != null && speculativeRunner == null && ConfuzzionOptions.v().pipeline_depth > 0) {
+            pipelineRunner = new PipelineRunner(pool,
+                    ConfuzzionOptions.v().pipeline_depth,
+                    resultFolder, timeout, adaptiveTimeout, executionCache, syncDirectory);
+        }
+
+        // Kinds of mutations chosen by their results
+        MutationScheduler mutationScheduler = null;
+        if (ConfuzzionOptions.v().adaptive_mutations) {
+            if (speculativeRunner != null || pipelineRunner != null) {
+                logger.warn("Adaptive mutations only available when executing one mutation at a time");
+            } else {
+                mutationScheduler = new MutationScheduler(rand, MUTATIONS_EXPLORATION);
+            }
+        }
+
+        // Decisions of the campaign, replayed from a fresh program
+        Journal journal = null;
+        if (ConfuzzionOptions.v().write_journal) {
+            if (seedFolder != null || resumeState != null || speculativeRunner != null || pipelineRunner != null) {
+                logger.warn("Journal only available for new campaigns executing one mutation at a time");
+            } else {
+                try {
+                    journal = new Journal(resultFolder, seed, targets);
+                } catch (IOException e) {
+                    logger.error("Error while creating journal", e);
+                    return;
+                }
+            }
+        }
 
         // Refresh Status in command line each second
         Timer timer = new Timer();
         StatusScreen statusScreen = new StatusScreen();
+        statusScreen.newTimeout(timeout);
+        statusScreen.setExecutorPool(pool);
+        statusScreen.setInProcessExecutor(inProcessExecutor);
+        statusScreen.setMutationScheduler(mutationScheduler);
+        long loop1 = 0;
+        if (resumeState != null) {
+            statusScreen.restoreState(resumeState);
+            statusScreen.newStackSize(mutationsStack.size());
+            loop1 = Long.parseLong(resumeState.getProperty("iteration"));
+        }
         if (!ConfuzzionOptions.v().quiet) {
             timer.schedule(statusScreen, 0, TIMER_TIMEOUT);
         }
         final long startTime = System.nanoTime();
 
-        for (long loop1 = 0; loop1 < mainloop_turn || mainloop_turn < 0; loop1++) {
+        // Periodic checkpoints of the campaign
+        final long checkpointPeriod = ConfuzzionOptions.v().checkpoint_period * 1000000000L;
+        long nextCheckpoint = startTime + checkpointPeriod;
+        // Periodic switches to programs found by other workers
+        final long syncPeriod = ConfuzzionOptions.v().sync_period * 1000000000L;
+        long nextSync = startTime + syncPeriod;
+
+        for (; loop1 < mainloop_turn || mainloop_turn < 0; loop1++) {
+            if (inProcessExecutor != null && InProcessExecutor.isRecycleRequested()) {
+                logger.warn("Stopping to recycle the JVM");
+                break;
+            }
+            if (checkpointPeriod > 0 && System.nanoTime() - nextCheckpoint > 0) {
+                this.writeCheckpoint(checkpoint, currentProg, mutationsStack, rand, statusScreen, loop1);
+                nextCheckpoint = System.nanoTime() + checkpointPeriod;
+            }
+            boolean stalled = statusScreen.isStalled();
+            if (syncDirectory != null && journal == null &&
+                    (stalled || (syncPeriod > 0 && System.nanoTime() - nextSync > 0))) {
+                nextSync = System.nanoTime() + syncPeriod;
+                Path queuedFolder = null;
+                try {
+                    queuedFolder = syncDirectory.pickProgram(rand);
+                } catch (IOException e) {
+                    logger.warn("Cannot read shared queue", e);
+                }
+                if (queuedFolder != null) {
+                    // Start again from a program of the shared queue, as
+                    // from a seed
+                    logger.info("Switching to program {}", queuedFolder);
+                    if (pipelineRunner != null) {
+                        pipelineRunner.drain(currentProg, contracts, rand, statusScreen,
+                                mutationsStack.size(), startTime);
+                    }
+                    ConfuzzionMain.resetSootContext();
+                    rand.resetSootContext();
+                    currentProg = ConfuzzionMain.loadProgram(rand, queuedFolder,
+                            ConfuzzionMain.listClasses(queuedFolder));
+                    mutationsStack.clear();
+                    calledMethods.clear();
+                    statusScreen.newStackSize(0);
+                    stalled = false;
+                }
+            }
+            if ((stalled && mutationsStack.size() > 0) || mutationsStack.size() >= stackLimit) {
+                // Revert a random number of mutations
+                int toRevert = rand.nextUint(mutationsStack.size());
+                if (journal != null) {
+                    try {
+                        journal.writeRevert(loop1, toRevert);
+                    } catch (IOException e) {
+                        logger.error("Error while writing journal", e);
+                        break;
+                    }
+                }
+                Mutation reverted = null;
+                while(toRevert-- > 0) {
+                    reverted = mutationsStack.pop();
+                    reverted.undo();
+                }
+                if (pipelineRunner != null) {
+                    pipelineRunner.invalidate();
+                }
+                if (reverted instanceof Checkpoint.SavedMutation) {
+                    // Program below the first mutations of the resumed campaign
+                    if (pipelineRunner != null) {
+                        pipelineRunner.drain(currentProg, contracts, rand, statusScreen,
+                                mutationsStack.size(), startTime);
+                    }
+                    Path restoredFolder = Paths.get(resultFolder.toAbsolutePath().toString(), "restored");
+                    try {
+                        List<String> classNames = checkpoint.writeLevel(mutationsStack.size(), restoredFolder);
+                        ConfuzzionMain.resetSootContext();
+                        rand.resetSootContext();
+                        currentProg = ConfuzzionMain.loadProgram(rand, restoredFolder, classNames);
+                    } catch (IOException e) {
+                        logger.error("Error while restoring program of checkpoint", e);
+                        break;
+                    }
+                    calledMethods.clear();
+                }
+                // Refresh stack size on status screen
+                statusScreen.newStackSize(mutationsStack.size());
+            }
+
             Mutation mutation = null;
 
+            if (speculativeRunner != null || pipelineRunner != null) {
+                try {
+                    if (speculativeRunner != null) {
+                        mutation = speculativeRunner.evaluate(currentProg, contracts, rand, statusScreen,
+                                loop1, mutationsStack.size(), startTime);
+                    } else {
+                        mutation = pipelineRunner.step(currentProg, contracts, rand, statusScreen,
+                                loop1, mutationsStack.size(), startTime);
+                    }
+                } catch (Throwable e) {
+                    logger.error("Error while evaluating candidate mutations", e);
+                    break;
+                }
+                if (mutation != null) {
+                    mutationsStack.push(mutation);
+                    if (syncDirectory != null && mutation instanceof CallMethodMutation &&
+                            calledMethods.add(((CallMethodMutation)mutation).getCalledMethod())) {
+                        try {
+                            syncDirectory.publishProgram(currentProg);
+                        } catch (IOException e2) {
+                            logger.error("Error while sharing program", e2);
+                        }
+                    }
+                }
+                statusScreen.newStackSize(mutationsStack.size());
+                continue;
+            }
+
+            // Names of new locals, also used by executions
+            final long counter = rand.getCounter();
+            final long mutationTime = System.nanoTime();
+            int kind = -1;
             try {
-                // Random mutation (program level | class level | method level)
-                mutation = currentProg.randomMutation();
+                if (mutationScheduler != null) {
+                    kind = mutationScheduler.select(currentProg.canAddClass());
+                    mutation = currentProg.randomMutation(kind);
+                } else {
+                    // Random mutation (program level | class level | method level)
+                    mutation = currentProg.randomMutation();
+                }
             } catch (MutationException e) {
                 logger.warn("Exception while applying mutation", e);
                 e.undoMutation();
                 statusScreen.newMutation(e.getMutationClass(), Status.FAILED, 0);
+                if (mutationScheduler != null) {
+                    mutationScheduler.update(kind, false, System.nanoTime() - mutationTime);
+                }
+                if (journal != null) {
+                    try {
+                        journal.writeFailure(loop1, counter, kind, e.getMutationClass());
+                    } catch (IOException e2) {
+                        logger.error("Error while writing journal", e2);
+                        break;
+                    }
+                }
                 continue;
             } catch (Throwable e) {
                 logger.error("Error while applying mutation", e);
@@ -386,11 +1093,25 @@ public class ConfuzzionMain {
                     resultFolder.toAbsolutePath().toString(),
                     loop1 + "-" + mutation.getClass().getSimpleName());
             Boolean keepFolder = false;
+            boolean folderCreated = useFolder;
             int loop2 = 0;
+            // Calls to randomConstants(), replayed from the journal
+            int constantsChanges = 0;
             Status status = Status.NOTEXECUTED;
+            // Last result comes from the cache, nothing was written to disk
+            boolean resultCached = false;
+            MethodComplexity targetMethod = null;
+            if (mutation instanceof CallMethodMutation) {
+                targetMethod = rand.getMethodComplexity(((CallMethodMutation)mutation).getCalledMethod());
+            }
+            long runTimeout = timeout;
+            if (adaptiveTimeout != null) {
+                runTimeout = adaptiveTimeout.getTimeout(targetMethod);
+                statusScreen.newTimeout(runTimeout);
+            }
             try {
                 // Instantiation and launch
-                if (withJVM) {
+                if (useFolder) {
                     try {
                         Files.createDirectories(folder);
                     } catch(IOException e2) {
@@ -399,20 +1120,65 @@ public class ConfuzzionMain {
                     }
                 }
 
-                for (loop2 = 0; loop2 < constants_tries; loop2++) {
-                    try {
-                        if (withJVM) {
-                            currentProg.genAndLaunchWithJVM(javahome, folder.toString(), timeout);
-                        } else { //with threads
-                            currentProg.genAndLaunch(timeout);
-                        }
-                    } catch(Throwable e2) {
-                        Throwable cause = Util.getCause(e2);
-                        if (cause instanceof ContractCheckException || loop2 == constants_tries - 1) {
+                if (batchFolder != null) {
+                    // All variants of constants are executed by the same JVM
+                    ExecutionResult[] results = currentProg.genAndLaunchBatchWithJVM(javahome, batchFolder,
+                            mutation, constants_tries, runTimeout);
+                    loop2 = BatchRunner.countExecuted(results);
+                    constantsChanges = constants_tries - 1;
+                    results[BatchRunner.select(results)].check();
+                } else {
+                    for (loop2 = 0; loop2 < constants_tries; loop2++) {
+                        try {
+                            String hash = null;
+                            Status cachedStatus = null;
+                            if (executionCache != null) {
+                                hash = currentProg.getBytecodeHash();
+                                cachedStatus = executionCache.get(hash);
+                            }
+                            resultCached = cachedStatus != null;
+                            if (resultCached) {
+                                statusScreen.newCacheHit();
+                                executionCache.replay(hash);
+                            } else {
+                                final long launchTime = System.nanoTime();
+                                try {
+                                    if (pool != null) {
+                                        currentProg.genAndLaunchWithPool(pool, runTimeout);
+                                    } else if (executor != null) {
+                                        currentProg.genAndLaunchWithExecutor(executor, runTimeout);
+                                    } else if (workspace != null) {
+                                        currentProg.genAndLaunchWithWorkspace(javahome, workspace, runTimeout);
+                                    } else if (withJVM) {
+                                        currentProg.genAndLaunchWithJVM(javahome, folder.toString(), runTimeout);
+                                    } else { //with threads
+                                        currentProg.genAndLaunch(inProcessExecutor, runTimeout);
+                                    }
+                                } catch(Throwable e3) {
+                                    if (executionCache != null) {
+                                        executionCache.put(hash, e3);
+                                    }
+                                    throw e3;
+                                }
+                                if (executionCache != null) {
+                                    executionCache.put(hash, Status.SUCCESS, null);
+                                }
+                                if (adaptiveTimeout != null) {
+                                    adaptiveTimeout.addLatency(targetMethod, (System.nanoTime() - launchTime) / 1000000L);
+                                }
+                            }
+                            // Successful execution, keep these constants
                             loop2++;
-                            throw e2;
-                        } else {
-                            mutation.randomConstants();
+                            break;
+                        } catch(Throwable e2) {
+                            Throwable cause = Util.getCause(e2);
+                            if (cause instanceof ContractCheckException || loop2 == constants_tries - 1) {
+                                loop2++;
+                                throw e2;
+                            } else {
+                                mutation.randomConstants();
+                                constantsChanges++;
+                            }
                         }
                     }
                 }
@@ -422,15 +1188,35 @@ public class ConfuzzionMain {
                 // Add mutation to the stack
                 mutationsStack.push(mutation);
                 status = Status.SUCCESS;
+                if (syncDirectory != null && mutation instanceof CallMethodMutation &&
+                        calledMethods.add(((CallMethodMutation)mutation).getCalledMethod())) {
+                    // First successful call of this method: share the program
+                    try {
+                        syncDirectory.publishProgram(currentProg);
+                    } catch (IOException e2) {
+                        logger.error("Error while sharing program", e2);
+                    }
+                }
             } catch(Throwable e) {
                 logger.warn("Exception while executing program", e);
                 Throwable cause = Util.getCause(e);
-                if (cause instanceof ContractCheckException) {
+                if (cause instanceof ContractCheckException && resultCached) {
+                    // Same bytecode as a violation already saved
+                    ContractCheckException violation = (ContractCheckException)cause;
+                    logger.info("Cached violation, actual type: {}, expected type: {}",
+                            violation.getActualType(), violation.getExpectedType());
+                    status = Status.VIOLATES;
+                } else if (cause instanceof ContractCheckException) {
                     keepFolder = true;
-                    if (!withJVM) {
+                    if (!useFolder) {
                         try {
                             Files.createDirectories(folder);
-                            currentProg.saveAsClassFiles(folder.toString());
+                            folderCreated = true;
+                            if (workspace != null) {
+                                workspace.copyTo(folder);
+                            } else {
+                                currentProg.saveAsClassFiles(folder.toString());
+                            }
                         } catch(IOException e2) {
                             logger.error("Printing last program generated:\n{}", currentProg.toString(), e2);
                             break;
@@ -440,13 +1226,29 @@ public class ConfuzzionMain {
                     currentProg.saveAsJimpleFiles(folder.toString());
                     // Save stats to stats.txt
                     String statsFile = Paths.get(folder.toString(), "stats.txt").toString();
+                    ContractCheckException violation = (ContractCheckException)cause;
                     String content = String.format("Found violation in %d ns\nStacked mutations: %d\n", System.nanoTime() - startTime, mutationsStack.size());
+                    if (violation.getActualType() != null) {
+                        content += String.format("Actual type: %s\nExpected type: %s\n", violation.getActualType(), violation.getExpectedType());
+                    }
                     logger.info(content);
                     try {
                         Util.writeToFile(statsFile, content);
                     } catch (IOException e1) {
                         logger.error("Writing file {}", statsFile, e1);
                     }
+                    if (syncDirectory != null) {
+                        // Only keep violations not already found by another worker
+                        String signature = SyncDirectory.violationSignature(mutation, violation);
+                        try {
+                            keepFolder = syncDirectory.publishViolation(signature, folder);
+                        } catch (IOException e1) {
+                            logger.error("Error while sharing violation", e1);
+                        }
+                    }
+                    if (keepFolder) {
+                        currentProg.saveMainLoader(folder.toString());
+                    }
                     status = Status.VIOLATES;
                 } else if (cause instanceof InterruptedException) {
                     status = Status.INTERRUPTED;
@@ -464,7 +1266,20 @@ public class ConfuzzionMain {
                     CallMethodMutation cmm = (CallMethodMutation)mutation;
                     rand.addMethodCallStatus(cmm.getCalledMethod(), status == Status.SUCCESS || status == Status.VIOLATES);
                 }
-                if (withJVM && !keepFolder) {
+                ConstructionRecipes.v().addStatus(mutation, status == Status.SUCCESS || status == Status.VIOLATES);
+                if (mutationScheduler != null) {
+                    mutationScheduler.update(kind, status == Status.SUCCESS || status == Status.VIOLATES,
+                            System.nanoTime() - mutationTime);
+                }
+                if (journal != null) {
+                    try {
+                        journal.writeMutation(loop1, counter, kind, mutation, constantsChanges, status);
+                    } catch (IOException e2) {
+                        logger.error("Error while writing journal", e2);
+                        break;
+                    }
+                }
+                if (folderCreated && !keepFolder) {
                     // Remove folder
                     try {
                         Util.deleteDirectory(folder);
@@ -474,20 +1289,106 @@ public class ConfuzzionMain {
                     }
                 }
             }
-
-            if ((statusScreen.isStalled() && mutationsStack.size() > 0) || mutationsStack.size() >= stackLimit) {
-                // Revert a random number of mutations
-                int toRevert = rand.nextUint(mutationsStack.size());
-                while(toRevert-- > 0) {
-                    mutationsStack.pop().undo();
-                }
-                // Refresh stack size on status screen
-                statusScreen.newStackSize(mutationsStack.size());
+        }
+        if (pipelineRunner != null) {
+            pipelineRunner.finish(currentProg, contracts, rand, statusScreen,
+                    mutationsStack.size(), startTime);
+        }
+        // fuzz.sh resumes the campaign in a new JVM, even without periodic
+        // checkpoints
+        if (checkpointPeriod > 0 || InProcessExecutor.isRecycleRequested()) {
+            this.writeCheckpoint(checkpoint, currentProg, mutationsStack, rand, statusScreen, loop1);
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.error("Error while closing journal", e);
             }
         }
         // Stop automatic call to status.run()
         timer.cancel();
+        if (executor != null) {
+            executor.stop();
+        }
+        if (pool != null) {
+            pool.stop();
+        }
+        if (inProcessExecutor != null) {
+            inProcessExecutor.stop();
+        }
         // Print a last time the status screen
         statusScreen.run();
     }
+
+    /**
+     * Start a new Soot context with the basic classes and the runtime of
+     * Confuzzion, dropping all classes loaded before
+     */
+    static void resetSootContext() {
+        G.reset();
+        soot.options.Options.v().set_weak_map_structures(true);
+        Scene.v().loadBasicClasses();
+        Scene.v().extendSootClassPath(RuntimeJar.getPath());
+    }
+
+    /**
+     * Load the classes of a saved program
+     * @param rand       the RandomGenerator of the program
+     * @param folder     folder of the Jimple files
+     * @param classNames classes in their original order
+     * @return the program made of these classes
+     */
+    private static Program loadProgram(RandomGenerator rand, Path folder, List<String> classNames) {
+        Scene.v().extendSootClassPath(folder.toString());
+        Program program = new Program(rand, "Test", false);
+        for (String className : classNames) {
+            logger.info("Loading class {}", className);
+            Mutant mut = Mutant.loadClass(className);
+            mut.fixClass();
+            program.addMutant(mut);
+            if (logger.isDebugEnabled()) {
+                logger.debug(mut.toString());
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Find the classes (.jimple/.class) of a seed folder
+     * @param folder the seed folder
+     * @return names of the classes
+     */
+    private static ArrayList<String> listClasses(Path folder) {
+        ArrayList<String> classNames = new ArrayList<String>();
+        File[] listFiles = folder.toFile().listFiles();
+        for (int i = listFiles.length - 1; i >= 0; i--) {
+            File fileEntry = listFiles[i];
+            if (fileEntry.isFile()) {
+                String filename = fileEntry.getName();
+                if (filename.endsWith(".jimple") || filename.endsWith(".class")) {
+                    classNames.add(filename.substring(0, filename.lastIndexOf(".")));
+                }
+            }
+        }
+        return classNames;
+    }
+
+    /**
+     * Write the state of the campaign. Stacked mutations reference Soot
+     * objects of this run, so the checkpoint saves the program below each
+     * of them instead.
+     */
+    private void writeCheckpoint(Checkpoint checkpoint, Program program, Stack<Mutation> mutationsStack,
+            RandomGenerator rand, StatusScreen statusScreen, long iteration) {
+        Properties state = new Properties();
+        state.setProperty("iteration", Long.toString(iteration));
+        try {
+            rand.saveState(state);
+            statusScreen.saveState(state);
+            checkpoint.write(program, mutationsStack, state);
+        } catch (IOException e) {
+            logger.error("Error while writing checkpoint", e);
+        }
+    }
 }
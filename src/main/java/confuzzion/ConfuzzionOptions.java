@@ -2,6 +2,8 @@ package confuzzion;
 
 public class ConfuzzionOptions {
     private static final ConfuzzionOptions instance = new ConfuzzionOptions();
+    private static final InheritableThreadLocal<ConfuzzionOptions> threadInstance =
+            new InheritableThreadLocal<ConfuzzionOptions>();
 
     public volatile boolean allow_unsafe_assignment;
     public volatile boolean use_jasmin_backend;
@@ -10,6 +12,26 @@ public class ConfuzzionOptions {
     public volatile boolean fixed_number_of_classes;
     public volatile boolean use_uniform_distribution_for_methods;
     public volatile boolean quiet;
+    public volatile int executor_max_runs;
+    public volatile int executor_pool_size;
+    public volatile int quarantine_limit;
+    public volatile int live_loaders_limit;
+    public volatile long metaspace_limit;
+    public volatile boolean reuse_workspace;
+    public volatile boolean batch_constants;
+    public volatile boolean use_cds;
+    public volatile boolean adaptive_timeout;
+    public volatile boolean adaptive_mutations;
+    public volatile int execution_cache_size;
+    public volatile int speculative_candidates;
+    public volatile int pipeline_depth;
+    public volatile long checkpoint_period;
+    public volatile boolean write_journal;
+    public volatile double timeout_percentile;
+    public volatile double timeout_factor;
+    public volatile long timeout_floor;
+    public volatile long timeout_ceiling;
+    public volatile long sync_period;
 
     private ConfuzzionOptions() {
         allow_unsafe_assignment = false;
@@ -19,9 +41,81 @@ public class ConfuzzionOptions {
         fixed_number_of_classes = true;
         use_uniform_distribution_for_methods = false;
         quiet = false;
+        executor_max_runs = 0;
+        executor_pool_size = 0; // no pool
+        quarantine_limit = 16;
+        live_loaders_limit = 1000;
+        metaspace_limit = 0; // no limit
+        reuse_workspace = false;
+        batch_constants = false;
+        use_cds = false;
+        adaptive_timeout = false;
+        adaptive_mutations = false;
+        execution_cache_size = 0; // no cache
+        speculative_candidates = 0; // one mutation at a time
+        pipeline_depth = 0; // no pipeline
+        checkpoint_period = 600; // seconds
+        write_journal = false;
+        timeout_percentile = 0.99;
+        timeout_factor = 3.0;
+        timeout_floor = 50;
+        timeout_ceiling = 0; // use fixed timeout
+        sync_period = 300; // seconds
     }
 
+    /**
+     * Get the options of the current worker thread, or the process-wide
+     * options if the thread has none.
+     * @return options
+     */
     public static ConfuzzionOptions v() {
-        return instance;
+        ConfuzzionOptions options = threadInstance.get();
+        if (options == null) {
+            return instance;
+        }
+        return options;
+    }
+
+    /**
+     * Use a copy of the current options for the current thread and the
+     * threads it starts.
+     * @return the options of the current thread
+     */
+    public static ConfuzzionOptions newForCurrentThread() {
+        ConfuzzionOptions options = ConfuzzionOptions.v().copy();
+        threadInstance.set(options);
+        return options;
+    }
+
+    private ConfuzzionOptions copy() {
+        ConfuzzionOptions options = new ConfuzzionOptions();
+        options.allow_unsafe_assignment = allow_unsafe_assignment;
+        options.use_jasmin_backend = use_jasmin_backend;
+        options.java_version = java_version;
+        options.class_number_limit = class_number_limit;
+        options.fixed_number_of_classes = fixed_number_of_classes;
+        options.use_uniform_distribution_for_methods = use_uniform_distribution_for_methods;
+        options.quiet = quiet;
+        options.executor_max_runs = executor_max_runs;
+        options.executor_pool_size = executor_pool_size;
+        options.quarantine_limit = quarantine_limit;
+        options.live_loaders_limit = live_loaders_limit;
+        options.metaspace_limit = metaspace_limit;
+        options.reuse_workspace = reuse_workspace;
+        options.batch_constants = batch_constants;
+        options.use_cds = use_cds;
+        options.adaptive_timeout = adaptive_timeout;
+        options.adaptive_mutations = adaptive_mutations;
+        options.execution_cache_size = execution_cache_size;
+        options.speculative_candidates = speculative_candidates;
+        options.pipeline_depth = pipeline_depth;
+        options.checkpoint_period = checkpoint_period;
+        options.write_journal = write_journal;
+        options.timeout_percentile = timeout_percentile;
+        options.timeout_factor = timeout_factor;
+        options.timeout_floor = timeout_floor;
+        options.timeout_ceiling = timeout_ceiling;
+        options.sync_period = sync_period;
+        return options;
     }
 }
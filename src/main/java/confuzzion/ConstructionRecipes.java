@@ -0,0 +1,207 @@
+package confuzzion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import soot.G;
+import soot.SootClass;
+import soot.SootMethod;
+
+/**
+ * Methods building objects of a class, for the Soot context of the current
+ * thread.
+ * The recipes of a class are its public constructors, else its public
+ * static methods returning the class, else any public static method. They
+ * are searched once per class. Executions of programs are reported with
+ * the recipes used by the mutation, and a recipe is chosen according to its
+ * rate of successful executions.
+ * Classes of the program always have a public constructor, so methods added
+ * by mutations do not change their recipes.
+ */
+public class ConstructionRecipes {
+    // Bounds of the objects built by one mutation: depth of nested
+    // constructors calls and number of added units
+    public static final int MAX_DEPTH = 4;
+    public static final int MAX_UNITS = 100;
+
+    private static final Map<G, ConstructionRecipes> contexts =
+            Collections.synchronizedMap(new WeakHashMap<G, ConstructionRecipes>());
+
+    private HashMap<SootClass, ArrayList<SootMethod>> recipes;
+    private HashMap<SootMethod, Statistics> statistics;
+    // Constructors calls grouped by class, used by ImplementorIndex
+    private HashMap<String, Statistics> classStatistics;
+
+    /**
+     * Executions of programs using a recipe
+     */
+    private static class Statistics {
+        long uses;
+        long successes;
+
+        void add(boolean success) {
+            uses++;
+            if (success) {
+                successes++;
+            }
+        }
+
+        /**
+         * @return rate of successful executions, 0.5 for an unused recipe
+         */
+        double getWeight() {
+            return (successes + 1.0) / (uses + 2.0);
+        }
+    }
+
+    private ConstructionRecipes() {
+        this.recipes = new HashMap<SootClass, ArrayList<SootMethod>>();
+        this.statistics = new HashMap<SootMethod, Statistics>();
+        this.classStatistics = new HashMap<String, Statistics>();
+    }
+
+    /**
+     * @return the recipes of the Soot context of the current thread
+     */
+    public static ConstructionRecipes v() {
+        G context = G.v();
+        synchronized (contexts) {
+            ConstructionRecipes instance = contexts.get(context);
+            if (instance == null) {
+                instance = new ConstructionRecipes();
+                contexts.put(context, instance);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * @param clazz the class to build
+     * @return constructors or static methods, empty if there is none
+     */
+    public List<SootMethod> getRecipes(SootClass clazz) {
+        ArrayList<SootMethod> methods = recipes.get(clazz);
+        if (methods == null) {
+            methods = ConstructionRecipes.findRecipes(clazz);
+            recipes.put(clazz, methods);
+        }
+        return methods;
+    }
+
+    private static ArrayList<SootMethod> findRecipes(SootClass clazz) {
+        ArrayList<SootMethod> constructors = new ArrayList<SootMethod>();
+        Iterator<SootMethod> iterMethods = clazz.methodIterator();
+        while (iterMethods.hasNext()) {
+            SootMethod method = iterMethods.next();
+            if (method.isConstructor() && method.isPublic()) {
+                constructors.add(method);
+            }
+        }
+
+        if (constructors.size() == 0) {
+            // No constructors found. Try invoking static methods to get other
+            // type of objects.
+            // But first try to find a static method of Class<T> that return
+            // a type T.
+            ArrayList<SootMethod> methodsSameType = new ArrayList<SootMethod>();
+            iterMethods = clazz.methodIterator();
+            while (iterMethods.hasNext()) {
+                SootMethod method = iterMethods.next();
+                if (method.isPublic() && method.isStatic()) {
+                    if (method.getReturnType() == clazz.getType()) {
+                        methodsSameType.add(method);
+                    }
+                    constructors.add(method);
+                }
+            }
+            if (methodsSameType.size() > 0) {
+                constructors = methodsSameType;
+            }
+            // else: continue with an other static method call that return an
+            // other type of object
+        }
+        constructors.trimToSize();
+        return constructors;
+    }
+
+    /**
+     * Choose a recipe, with a probability proportional to its rate of
+     * successful executions
+     * @param clazz the class to build
+     * @param rand  the RandomGenerator to use
+     * @return a constructor or a static method, null if there is none
+     */
+    public SootMethod pick(SootClass clazz, RandomGenerator rand) {
+        List<SootMethod> methods = this.getRecipes(clazz);
+        if (methods.size() == 0) {
+            return null;
+        }
+        double total = 0.0;
+        for (SootMethod method : methods) {
+            total += this.getWeight(method);
+        }
+        double choice = rand.nextDouble() * total;
+        for (SootMethod method : methods) {
+            choice -= this.getWeight(method);
+            if (choice < 0.0) {
+                return method;
+            }
+        }
+        // Rounding errors
+        return methods.get(methods.size() - 1);
+    }
+
+    private double getWeight(SootMethod method) {
+        Statistics stats = statistics.get(method);
+        if (stats == null) {
+            return 0.5;
+        }
+        return stats.getWeight();
+    }
+
+    /**
+     * @param className a class
+     * @return rate of successful executions of the objects built by the
+     *         constructors of the class, 0.5 if none was executed
+     */
+    public double getClassWeight(String className) {
+        Statistics stats = classStatistics.get(className);
+        if (stats == null) {
+            return 0.5;
+        }
+        return stats.getWeight();
+    }
+
+    /**
+     * Add the result of the execution of a mutation to the recipes it used
+     * @param mutation the executed mutation
+     * @param success  true if the program executed without crashing
+     */
+    public void addStatus(Mutation mutation, boolean success) {
+        if (!(mutation instanceof MethodMutation)) {
+            return;
+        }
+        for (SootMethod method : ((MethodMutation)mutation).getRecipes()) {
+            Statistics stats = statistics.get(method);
+            if (stats == null) {
+                stats = new Statistics();
+                statistics.put(method, stats);
+            }
+            stats.add(success);
+            if (method.isConstructor()) {
+                String className = method.getDeclaringClass().getName();
+                stats = classStatistics.get(className);
+                if (stats == null) {
+                    stats = new Statistics();
+                    classStatistics.put(className, stats);
+                }
+                stats.add(success);
+            }
+        }
+    }
+}
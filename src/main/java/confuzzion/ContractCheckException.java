@@ -10,4 +10,50 @@ public class ContractCheckException extends Exception {
      */
     private static final long serialVersionUID = -8736479620640498951L;
 
+    private String actualType;
+    private String expectedType;
+
+    public ContractCheckException() {
+        this.actualType = null;
+        this.expectedType = null;
+    }
+
+    /**
+     * Constructor called by contract checks inside generated programs
+     * @param value        the value violating the contract
+     * @param expectedType the static type of the value
+     */
+    public ContractCheckException(Object value, String expectedType) {
+        super("Value of type " + (value == null ? "null" : value.getClass().getName()) +
+                " is used as " + expectedType);
+        this.actualType = value == null ? "null" : value.getClass().getName();
+        this.expectedType = expectedType;
+    }
+
+    /**
+     * Rebuild a violation reported by another JVM
+     * @param actualType   dynamic type of the value
+     * @param expectedType static type of the value
+     * @return the ContractCheckException
+     */
+    public static ContractCheckException fromTypes(String actualType, String expectedType) {
+        ContractCheckException exception = new ContractCheckException();
+        exception.actualType = actualType;
+        exception.expectedType = expectedType;
+        return exception;
+    }
+
+    /**
+     * @return dynamic type of the value or null if unknown
+     */
+    public String getActualType() {
+        return actualType;
+    }
+
+    /**
+     * @return static type of the value or null if unknown
+     */
+    public String getExpectedType() {
+        return expectedType;
+    }
 }
@@ -13,6 +13,7 @@ import soot.Value;
 import soot.jimple.IntConstant;
 import soot.jimple.Jimple;
 import soot.jimple.NullConstant;
+import soot.jimple.StringConstant;
 
 import java.util.ArrayList;
 
@@ -25,7 +26,11 @@ public class ContractTypeConfusion implements Contract {
     public BodyMutation applyCheck(Body body) {
         BodyMutation mutation = new BodyMutation(body);
         SootClass exception = Util.getOrLoadSootClass("confuzzion.ContractCheckException");
-        SootMethod mExceptionInit = exception.getMethodByName("<init>");
+        // ContractCheckException(Object value, String expectedType)
+        ArrayList<Type> initParameters = new ArrayList<Type>(2);
+        initParameters.add(RefType.v("java.lang.Object"));
+        initParameters.add(RefType.v("java.lang.String"));
+        SootMethod mExceptionInit = exception.getMethod("<init>", initParameters);
         int a = 0;
         ArrayList<Local> newLocals = new ArrayList<Local>(10);
         ArrayList<Value> values = new ArrayList<Value>(10);
@@ -90,7 +95,9 @@ public class ContractTypeConfusion implements Contract {
             mutation.addUnit(
                     Jimple.v().newInvokeStmt(
                             Jimple.v().newSpecialInvokeExpr(locException,
-                                    mExceptionInit.makeRef())));
+                                    mExceptionInit.makeRef(),
+                                    value,
+                                    StringConstant.v(type.toString()))));
             // Add throw statement
             Unit uThrow = Jimple.v().newThrowStmt(locException);
             mutation.addUnit(uThrow);
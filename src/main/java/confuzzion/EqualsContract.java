@@ -24,7 +24,7 @@ public class EqualsContract implements Contract {
         BodyMutation mutation = new BodyMutation(body);
         SootClass exception = Scene.v().getSootClass(
             "confuzzion.ContractCheckException");
-        SootMethod mExceptionInit = exception.getMethodByName("<init>");
+        SootMethod mExceptionInit = exception.getMethod("<init>", new ArrayList<Type>());
         SootClass clazz = Scene.v().getSootClass("java.lang.Object");
         SootMethod mEquals = clazz.getMethodByName("equals");
         int a = 0;
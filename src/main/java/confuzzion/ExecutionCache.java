@@ -0,0 +1,138 @@
+package confuzzion;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of execution results. Programs are identified by a hash
+ * of their class names and bytecode, so a program with the same bytecode
+ * as a previous one is not executed again.
+ * Interrupted executions are not cached as they may depend on the load of
+ * the machine. Violations are cached with their types, so that they are
+ * reported as the original execution.
+ */
+public class ExecutionCache {
+    private LinkedHashMap<String, Result> results;
+    private long hits;
+
+    private static class Result {
+        private Status status;
+        // Types of the violation, null if unknown
+        private String actualType;
+        private String expectedType;
+
+        public Result(Status status, ContractCheckException violation) {
+            this.status = status;
+            this.actualType = violation == null ? null : violation.getActualType();
+            this.expectedType = violation == null ? null : violation.getExpectedType();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param capacity maximum number of results kept
+     */
+    public ExecutionCache(final int capacity) {
+        this.results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.hits = 0;
+    }
+
+    /**
+     * Get the result of a previous execution
+     * @param hash hash of the program
+     * @return Status of the execution or null if unknown
+     */
+    public Status get(String hash) {
+        Result result = results.get(hash);
+        if (result == null) {
+            return null;
+        }
+        hits++;
+        return result.status;
+    }
+
+    /**
+     * Get the violation of a previous execution
+     * @param hash hash of the program
+     * @return the violation with the types of the execution, null if the
+     *         execution did not violate a contract
+     */
+    public ContractCheckException getViolation(String hash) {
+        Result result = results.get(hash);
+        if (result == null || result.status != Status.VIOLATES) {
+            return null;
+        }
+        return ContractCheckException.fromTypes(result.actualType, result.expectedType);
+    }
+
+    /**
+     * Save the result of an execution
+     * @param hash      hash of the program
+     * @param exception exception thrown by the execution, null on success
+     */
+    public void put(String hash, Throwable exception) {
+        Status status = Status.SUCCESS;
+        ContractCheckException violation = null;
+        if (exception != null) {
+            Throwable cause = Util.getCause(exception);
+            if (cause instanceof ContractCheckException) {
+                status = Status.VIOLATES;
+                violation = (ContractCheckException)cause;
+            } else if (cause instanceof InterruptedException) {
+                status = Status.INTERRUPTED;
+            } else {
+                status = Status.CRASHED;
+            }
+        }
+        this.put(hash, status, violation);
+    }
+
+    /**
+     * Save the result of an execution
+     * @param hash      hash of the program
+     * @param status    Status of the execution
+     * @param violation the violation if status is VIOLATES, else null
+     */
+    public void put(String hash, Status status, ContractCheckException violation) {
+        if (status != Status.INTERRUPTED) {
+            results.put(hash, new Result(status, violation));
+        }
+    }
+
+    /**
+     * Reproduce the result of a previous execution
+     * @param hash hash of the program
+     * @throws Throwable the same kind of exception as the execution
+     */
+    public void replay(String hash) throws Throwable {
+        Result result = results.get(hash);
+        if (result == null) {
+            return;
+        }
+        switch (result.status) {
+        case VIOLATES:
+            throw ContractCheckException.fromTypes(result.actualType, result.expectedType);
+        case CRASHED:
+            throw new RuntimeException("Cached execution crashed");
+        case INTERRUPTED:
+            throw new InterruptedException();
+        default:
+            break;
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public int size() {
+        return results.size();
+    }
+}
@@ -0,0 +1,218 @@
+package confuzzion;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Result of the execution of a program inside a child JVM, written by the
+ * child on a pipe and read back by the parent.
+ * This class only depends on the JDK and on other runtime classes as it is
+ * loaded by the child JVM.
+ */
+public class ExecutionResult {
+    /** Maximum size of the output of a program kept in memory */
+    public static final int OUTPUT_LIMIT = 4096;
+    private static final int STACK_HASH_FRAMES = 8;
+
+    private Status status;
+    private String exceptionClass;
+    private int stackHash;
+    private String actualType;
+    private String expectedType;
+    private long clinitNanos;
+    private long initNanos;
+    // Set by ExecutorPool, not sent by the executor JVM
+    private long latencyNanos;
+    private String output;
+
+    public ExecutionResult(Status status) {
+        this.status = status;
+        this.exceptionClass = "";
+        this.stackHash = 0;
+        this.actualType = "";
+        this.expectedType = "";
+        this.clinitNanos = 0;
+        this.initNanos = 0;
+        this.latencyNanos = 0;
+        this.output = "";
+    }
+
+    /**
+     * Output stream keeping only the first OUTPUT_LIMIT bytes written
+     */
+    public static class BoundedOutput extends OutputStream {
+        private byte[] buffer = new byte[OUTPUT_LIMIT];
+        private int size = 0;
+
+        @Override
+        public synchronized void write(int b) {
+            if (size < buffer.length) {
+                buffer[size++] = (byte)b;
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int length = Math.min(len, buffer.length - size);
+            if (length > 0) {
+                System.arraycopy(b, off, buffer, size, length);
+                size += length;
+            }
+        }
+
+        public synchronized void reset() {
+            size = 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return new String(buffer, 0, size, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Initialize and instantiate every class of the program in order, as the
+     * generated Main loader would do.
+     * @param loader     class loader holding the program classes
+     * @param classNames names of the classes to instantiate
+     * @return result of the execution
+     */
+    public static ExecutionResult execute(ClassLoader loader, String[] classNames) {
+        long clinitNanos = 0;
+        long initNanos = 0;
+        ExecutionResult result = new ExecutionResult(Status.SUCCESS);
+        try {
+            for (String className : classNames) {
+                long time = System.nanoTime();
+                // Call method <clinit>
+                Class<?> clazz = Class.forName(className, true, loader);
+                clinitNanos += System.nanoTime() - time;
+                time = System.nanoTime();
+                // Call method <init>
+                clazz.newInstance();
+                initNanos += System.nanoTime() - time;
+            }
+        } catch (Throwable e) {
+            Throwable cause = e;
+            while (cause.getCause() != null && cause.getCause() != cause) {
+                cause = cause.getCause();
+            }
+            result.status = Status.CRASHED;
+            result.exceptionClass = cause.getClass().getName();
+            result.stackHash = ExecutionResult.stackHash(cause);
+            if (cause instanceof ContractCheckException) {
+                cause.printStackTrace();
+                ContractCheckException violation = (ContractCheckException)cause;
+                result.status = Status.VIOLATES;
+                if (violation.getActualType() != null) {
+                    result.actualType = violation.getActualType();
+                    result.expectedType = violation.getExpectedType();
+                }
+            }
+        }
+        result.clinitNanos = clinitNanos;
+        result.initNanos = initNanos;
+        return result;
+    }
+
+    private static int stackHash(Throwable exception) {
+        StackTraceElement[] stack = exception.getStackTrace();
+        int hash = exception.getClass().getName().hashCode();
+        for (int i = 0; i < stack.length && i < STACK_HASH_FRAMES; i++) {
+            hash = 31 * hash + stack[i].getClassName().hashCode();
+            hash = 31 * hash + stack[i].getMethodName().hashCode();
+            hash = 31 * hash + stack[i].getLineNumber();
+        }
+        return hash;
+    }
+
+    public void write(DataOutputStream output) throws IOException {
+        output.writeByte(status.ordinal());
+        output.writeUTF(exceptionClass);
+        output.writeInt(stackHash);
+        output.writeUTF(actualType);
+        output.writeUTF(expectedType);
+        output.writeLong(clinitNanos);
+        output.writeLong(initNanos);
+        output.writeUTF(this.output);
+    }
+
+    public static ExecutionResult read(DataInputStream input) throws IOException {
+        ExecutionResult result = new ExecutionResult(Status.values()[input.readByte()]);
+        result.exceptionClass = input.readUTF();
+        result.stackHash = input.readInt();
+        result.actualType = input.readUTF();
+        result.expectedType = input.readUTF();
+        result.clinitNanos = input.readLong();
+        result.initNanos = input.readLong();
+        result.output = input.readUTF();
+        return result;
+    }
+
+    /**
+     * Throw the exception corresponding to the status, as if the program
+     * was executed by the current JVM
+     * @throws ContractCheckException if the program violates a contract
+     * @throws InterruptedException if the execution timed out
+     * @throws RuntimeException if the program crashed
+     */
+    public void check() throws Exception {
+        switch (status) {
+        case SUCCESS:
+        case NOTEXECUTED:
+            break;
+        case VIOLATES:
+            if (actualType.isEmpty()) {
+                throw new ContractCheckException();
+            }
+            throw ContractCheckException.fromTypes(actualType, expectedType);
+        case INTERRUPTED:
+            throw new InterruptedException();
+        default:
+            throw new RuntimeException("Execution " + status + " " + exceptionClass);
+        }
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    public int getStackHash() {
+        return stackHash;
+    }
+
+    public long getClinitNanos() {
+        return clinitNanos;
+    }
+
+    public long getInitNanos() {
+        return initNanos;
+    }
+
+    /**
+     * @return wall time from the dispatch of the program to an executor JVM
+     *         until its result, JVM restart included
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public void setLatencyNanos(long latencyNanos) {
+        this.latencyNanos = latencyNanos;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+}
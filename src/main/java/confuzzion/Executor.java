@@ -0,0 +1,168 @@
+package confuzzion;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Handle on a long-lived child JVM running ExecutorServer.
+ * Programs are sent as bytecode through a pipe instead of launching a new JVM
+ * for each execution. The child JVM is restarted after a timeout, a crash of
+ * the JVM or a fixed number of executions.
+ */
+public class Executor {
+    private String javahome;
+    private String classpath;
+    private int maxRuns;
+    private File stderrFile;
+    private Process process;
+    private DataInputStream input;
+    private DataOutputStream output;
+    private int runs;
+
+    private static final Logger logger = LoggerFactory.getLogger(Executor.class);
+
+    /**
+     * Constructor
+     * @param javahome   target JVM to launch
+     * @param maxRuns    number of executions before restarting the JVM
+     * @param stderrFile file where the standard error of the JVM is redirected
+     */
+    public Executor(String javahome, int maxRuns, File stderrFile) {
+        this.javahome = javahome;
+        this.classpath = RuntimeJar.getPath();
+        this.maxRuns = maxRuns;
+        this.stderrFile = stderrFile;
+        this.process = null;
+        this.runs = 0;
+    }
+
+    private void start() throws IOException {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(Paths.get(javahome, "bin", "java").toString());
+        command.addAll(CdsArchive.getOptions(javahome));
+        command.add("-cp");
+        command.add(classpath);
+        command.add(ExecutorServer.class.getName());
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        if (logger.isInfoEnabled()) {
+            logger.info("Command: {}", processBuilder.command());
+        }
+        processBuilder.redirectError(stderrFile);
+        process = processBuilder.start();
+        input = new DataInputStream(process.getInputStream());
+        output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+        runs = 0;
+    }
+
+    /**
+     * Kill the child JVM. A new one is started on next execution.
+     */
+    public void stop() {
+        if (process != null) {
+            process.destroyForcibly();
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            process = null;
+        }
+    }
+
+    /**
+     * Start the child JVM if it is not running or if it must be restarted
+     * @throws IOException if the JVM cannot be started
+     */
+    public void prepare() throws IOException {
+        if (process == null || !process.isAlive() || runs >= maxRuns) {
+            this.stop();
+            this.start();
+        }
+    }
+
+    /**
+     * Send a program to the child JVM without waiting for its result
+     * @param classNames names of the classes in instantiation order
+     * @param bytecodes  bytecode of each class
+     * @throws RuntimeException if the JVM cannot be started or reached
+     */
+    public void send(List<String> classNames, List<byte[]> bytecodes) {
+        try {
+            this.prepare();
+            runs++;
+            output.writeInt(classNames.size());
+            for (int i = 0; i < classNames.size(); i++) {
+                output.writeUTF(classNames.get(i));
+                output.writeInt(bytecodes.get(i).length);
+                output.write(bytecodes.get(i));
+            }
+            output.flush();
+        } catch (IOException e) {
+            this.stop();
+            throw new RuntimeException("Executor JVM is not reachable", e);
+        }
+    }
+
+    /**
+     * Get the result of the program sent, without waiting
+     * @return the result or null if the program is still running
+     * @throws RuntimeException if the JVM exited or broke the protocol
+     */
+    public ExecutionResult poll() {
+        // The rest of the result is written at once after the magic number
+        final int responseSize = 4;
+        try {
+            if (input.available() < responseSize) {
+                if (process.isAlive() || input.available() >= responseSize) {
+                    return null;
+                }
+                // System.exit(), halt() or JVM crash
+                int errorCode = process.exitValue();
+                this.stop();
+                throw new RuntimeException("Error code " + errorCode);
+            }
+            if (input.readInt() != ExecutorServer.MAGIC) {
+                this.stop();
+                throw new RuntimeException("Executor protocol error");
+            }
+            return ExecutionResult.read(input);
+        } catch (IOException e) {
+            this.stop();
+            throw new RuntimeException("Executor JVM is not reachable", e);
+        }
+    }
+
+    /**
+     * Execute a program inside the child JVM
+     * @param classNames names of the classes in instantiation order
+     * @param bytecodes  bytecode of each class
+     * @param timeoutMiliseconds time before killing the JVM
+     * @return result of the successful execution
+     * @throws ContractCheckException if the program violates a contract
+     * @throws InterruptedException if the execution timed out
+     * @throws RuntimeException if the program or the JVM crashed
+     */
+    public ExecutionResult execute(List<String> classNames, List<byte[]> bytecodes, long timeoutMiliseconds) throws Exception {
+        this.send(classNames, bytecodes);
+        final long deadline = System.nanoTime() + timeoutMiliseconds * 1000000L;
+        ExecutionResult result;
+        while ((result = this.poll()) == null) {
+            if (System.nanoTime() - deadline > 0) {
+                this.stop();
+                throw new InterruptedException();
+            }
+            Thread.sleep(1);
+        }
+        result.check();
+        return result;
+    }
+}
@@ -0,0 +1,273 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of long-lived executor JVMs fed by a shared queue of programs.
+ * JVMs are started when the pool is created. Each idle JVM takes the next
+ * program of the queue, so the main loop and speculative candidates can
+ * submit programs concurrently.
+ * One supervisor thread sends programs, polls results, enforces deadlines
+ * and restarts JVMs, so no thread blocks on a child process.
+ */
+public class ExecutorPool {
+    private Slot[] slots;
+    private LinkedBlockingQueue<Job> queue;
+    private AtomicInteger busy;
+    private Thread supervisor;
+    private volatile boolean running;
+
+    private static final long IDLE_WAIT = 100;
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorPool.class);
+
+    /**
+     * A program waiting for, or under, execution
+     */
+    static class Job {
+        private List<String> classNames;
+        private List<byte[]> bytecodes;
+        private long timeout;
+        private long dispatchTime;
+        private long deadline;
+        private CompletableFuture<ExecutionResult> future;
+
+        public Job(List<String> classNames, List<byte[]> bytecodes, long timeout) {
+            this.classNames = classNames;
+            this.bytecodes = bytecodes;
+            this.timeout = timeout;
+            this.dispatchTime = 0;
+            this.deadline = 0;
+            this.future = new CompletableFuture<ExecutionResult>();
+        }
+    }
+
+    /**
+     * An executor JVM and the program it is executing
+     */
+    static class Slot {
+        private Executor executor;
+        private Job job;
+
+        public Slot(Executor executor) {
+            this.executor = executor;
+            this.job = null;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param javahomes    target JVMs, used in turn by the executors
+     * @param size         number of executor JVMs
+     * @param maxRuns      executions before restarting an executor JVM
+     * @param resultFolder where the standard error of each JVM is written
+     */
+    public ExecutorPool(String[] javahomes, int size, int maxRuns, Path resultFolder) {
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            Executor executor = new Executor(javahomes[i % javahomes.length], maxRuns,
+                    Paths.get(resultFolder.toAbsolutePath().toString(), "executor" + i + "-stderr.txt").toFile());
+            this.slots[i] = new Slot(executor);
+        }
+        this.queue = new LinkedBlockingQueue<Job>();
+        this.busy = new AtomicInteger(0);
+        this.running = true;
+        this.supervisor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ExecutorPool.this.supervise();
+            }
+        }, "ExecutorPool");
+        this.supervisor.setDaemon(true);
+        this.supervisor.start();
+    }
+
+    /**
+     * Queue a program for execution
+     * @param classNames names of the classes in instantiation order
+     * @param bytecodes  bytecode of each class
+     * @param timeout    time in ms before killing the JVM executing it
+     * @return future result, completed exceptionally with
+     *         InterruptedException on timeout or RuntimeException if the JVM
+     *         crashed. Contract violations are reported by the result.
+     */
+    public CompletableFuture<ExecutionResult> submit(List<String> classNames,
+            List<byte[]> bytecodes, long timeout) {
+        Job job = new Job(classNames, bytecodes, timeout);
+        if (!running) {
+            job.future.completeExceptionally(new RuntimeException("Executor pool is stopped"));
+            return job.future;
+        }
+        queue.add(job);
+        return job.future;
+    }
+
+    /**
+     * Execute a program and wait for its result
+     * @param classNames names of the classes in instantiation order
+     * @param bytecodes  bytecode of each class
+     * @param timeout    time in ms before killing the JVM executing it
+     * @return result of the successful execution
+     * @throws ContractCheckException if the program violates a contract
+     * @throws InterruptedException if the execution timed out
+     * @throws RuntimeException if the program or the JVM crashed
+     */
+    public ExecutionResult execute(List<String> classNames, List<byte[]> bytecodes,
+            long timeout) throws Exception {
+        ExecutionResult result = this.submit(classNames, bytecodes, timeout).get();
+        result.check();
+        return result;
+    }
+
+    /**
+     * @return number of executor JVMs
+     */
+    public int getSize() {
+        return slots.length;
+    }
+
+    /**
+     * @return number of executor JVMs executing a program
+     */
+    public int getBusy() {
+        return busy.get();
+    }
+
+    /**
+     * @return number of programs waiting for an executor JVM
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void supervise() {
+        for (Slot slot : slots) {
+            try {
+                slot.executor.prepare();
+            } catch (IOException e) {
+                logger.warn("Cannot start executor JVM", e);
+            }
+        }
+
+        while (running) {
+            boolean progress = false;
+            for (Slot slot : slots) {
+                if (slot.job != null) {
+                    progress |= this.check(slot);
+                }
+                if (slot.job == null) {
+                    Job job = queue.poll();
+                    if (job != null) {
+                        this.dispatch(slot, job);
+                        progress = true;
+                    }
+                }
+            }
+            if (progress) {
+                continue;
+            }
+            try {
+                if (busy.get() > 0) {
+                    Thread.sleep(1);
+                } else {
+                    // Every JVM is idle: wait for the next program
+                    Job job = queue.poll(IDLE_WAIT, TimeUnit.MILLISECONDS);
+                    if (job != null) {
+                        this.dispatch(slots[0], job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        for (Slot slot : slots) {
+            if (slot.job != null) {
+                slot.job.future.completeExceptionally(new RuntimeException("Executor pool is stopped"));
+            }
+            slot.executor.stop();
+        }
+        Job job;
+        while ((job = queue.poll()) != null) {
+            job.future.completeExceptionally(new RuntimeException("Executor pool is stopped"));
+        }
+    }
+
+    private void dispatch(Slot slot, Job job) {
+        // The JVM may still be starting after a restart: measured as part
+        // of the execution, as for a program launched by the main loop
+        job.dispatchTime = System.nanoTime();
+        try {
+            slot.executor.send(job.classNames, job.bytecodes);
+        } catch (RuntimeException e) {
+            job.future.completeExceptionally(e);
+            return;
+        }
+        job.deadline = job.dispatchTime + job.timeout * 1000000L;
+        slot.job = job;
+        busy.incrementAndGet();
+    }
+
+    /**
+     * Complete the job of a slot if its result is available or its deadline
+     * is reached
+     * @return true if the job is completed
+     */
+    private boolean check(Slot slot) {
+        Job job = slot.job;
+        try {
+            ExecutionResult result = slot.executor.poll();
+            if (result != null) {
+                result.setLatencyNanos(System.nanoTime() - job.dispatchTime);
+                this.complete(slot);
+                job.future.complete(result);
+                return true;
+            }
+        } catch (RuntimeException e) {
+            this.complete(slot);
+            job.future.completeExceptionally(e);
+            return true;
+        }
+        if (System.nanoTime() - job.deadline > 0) {
+            slot.executor.stop();
+            this.complete(slot);
+            job.future.completeExceptionally(new InterruptedException());
+            return true;
+        }
+        return false;
+    }
+
+    private void complete(Slot slot) {
+        slot.job = null;
+        busy.decrementAndGet();
+        try {
+            // Restart now rather than when the next program arrives
+            slot.executor.prepare();
+        } catch (IOException e) {
+            logger.warn("Cannot restart executor JVM", e);
+        }
+    }
+
+    /**
+     * Stop the supervisor thread and all executor JVMs. Pending programs
+     * complete exceptionally.
+     */
+    public void stop() {
+        running = false;
+        supervisor.interrupt();
+        try {
+            supervisor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
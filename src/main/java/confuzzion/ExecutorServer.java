@@ -0,0 +1,102 @@
+package confuzzion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Program executor running inside a child JVM.
+ * Without arguments, it is long-lived: it reads programs (class names and
+ * bytecode) on its standard input, loads each program inside a fresh class
+ * loader, instantiates all its classes and writes back an ExecutionResult on
+ * its standard output.
+ * With class names as arguments, it executes once the program found on its
+ * classpath and writes back its ExecutionResult. With --record before them,
+ * each class is executed alone, so that the classes loaded by all targets
+ * are recorded for CdsArchive even when some of them fail.
+ * The output of programs is kept in a bounded buffer and sent with the
+ * result.
+ * This class only depends on the JDK and on other runtime classes as it is
+ * loaded by the child JVM.
+ */
+public class ExecutorServer {
+    public static final int MAGIC = 0xC0F0221;
+    public static final String RECORD_OPTION = "--record";
+
+    public static void main(String args[]) {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        // Programs must not write inside the communication channel
+        ExecutionResult.BoundedOutput programOutput = new ExecutionResult.BoundedOutput();
+        PrintStream programStream = new PrintStream(programOutput, true);
+        System.setOut(programStream);
+        System.setErr(programStream);
+
+        try {
+            if (args.length > 0 && args[0].equals(RECORD_OPTION)) {
+                for (int i = 1; i < args.length; i++) {
+                    ExecutionResult result = ExecutionResult.execute(
+                            ExecutorServer.class.getClassLoader(), new String[] {args[i]});
+                    ExecutorServer.writeResult(output, result, programOutput);
+                }
+            } else if (args.length > 0) {
+                ExecutionResult result = ExecutionResult.execute(
+                        ExecutorServer.class.getClassLoader(), args);
+                ExecutorServer.writeResult(output, result, programOutput);
+            } else {
+                ExecutorServer.serve(output, programOutput);
+            }
+        } catch (IOException e) {
+            e.printStackTrace(new PrintStream(new FileOutputStream(FileDescriptor.err)));
+        }
+        Runtime.getRuntime().halt(0);
+    }
+
+    private static void serve(DataOutputStream output, ExecutionResult.BoundedOutput programOutput)
+            throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(System.in));
+        final int initialThreads = Thread.activeCount();
+        while (true) {
+            int numberOfClasses;
+            try {
+                numberOfClasses = input.readInt();
+            } catch (EOFException e) {
+                // Parent closed the channel
+                break;
+            }
+            String[] classNames = new String[numberOfClasses];
+            ByteClassLoader loader =
+                    new ByteClassLoader(ExecutorServer.class.getClassLoader());
+            for (int i = 0; i < numberOfClasses; i++) {
+                classNames[i] = input.readUTF();
+                byte[] bytecode = new byte[input.readInt()];
+                input.readFully(bytecode);
+                loader.addClass(classNames[i], bytecode);
+            }
+
+            programOutput.reset();
+            ExecutionResult result = ExecutionResult.execute(loader, classNames);
+            ExecutorServer.writeResult(output, result, programOutput);
+
+            if (Thread.activeCount() > initialThreads) {
+                // The program left running threads behind: start from a
+                // clean JVM for the next program.
+                break;
+            }
+        }
+    }
+
+    private static void writeResult(DataOutputStream output, ExecutionResult result,
+            ExecutionResult.BoundedOutput programOutput) throws IOException {
+        result.setOutput(programOutput.toString());
+        output.writeInt(MAGIC);
+        result.write(output);
+        output.flush();
+    }
+}
@@ -0,0 +1,257 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.G;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+
+/**
+ * Public concrete classes of the JDK implementing each interface or
+ * extending each abstract class, used by genObject() to build objects of
+ * abstract types.
+ * The index is built from the Soot hierarchy of the classes of the java.*
+ * packages, in a Soot context which is then reset. It is kept in the
+ * temporary folder and reused by next campaigns with the same java.home.
+ * Only class names are kept, so one index is shared by all Soot contexts.
+ */
+public class ImplementorIndex {
+    private static final int FORMAT = 1;
+    private static final String PACKAGE_PREFIX = "java.";
+
+    private static HashMap<String, List<String>> implementors = null;
+    private static final Logger logger = LoggerFactory.getLogger(ImplementorIndex.class);
+
+    /**
+     * Load the index of the current java.home, building it if needed.
+     * Must be called before the Soot context of the campaign is set up, as
+     * building the index resets it.
+     */
+    public static synchronized void load() {
+        if (implementors != null) {
+            return;
+        }
+        String javahome = System.getProperty("java.home");
+        String key = FORMAT + "\n" + javahome + "\n" + System.getProperty("java.version");
+        String name = "confuzzion-implementors-" +
+                Util.sha256(key.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        Path tmpFolder = Paths.get(System.getProperty("java.io.tmpdir"));
+        Path file = tmpFolder.resolve(name + ".properties");
+        Properties index = new Properties();
+        try {
+            if (Files.exists(file)) {
+                try (InputStream input = Files.newInputStream(file)) {
+                    index.load(input);
+                }
+            } else {
+                long start = System.nanoTime();
+                index = ImplementorIndex.build(javahome);
+                Path tmpFile = Files.createTempFile(tmpFolder, name, ".tmp");
+                try (OutputStream output = Files.newOutputStream(tmpFile)) {
+                    index.store(output, "Implementors of " + javahome);
+                }
+                Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                logger.info("Implementor index {} built in {} ms", file, (System.nanoTime() - start) / 1000000L);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot build implementor index of {}, continuing without it", javahome, e);
+        }
+        implementors = new HashMap<String, List<String>>();
+        for (String type : index.stringPropertyNames()) {
+            ArrayList<String> classes = new ArrayList<String>();
+            Collections.addAll(classes, index.getProperty(type).split(","));
+            implementors.put(type, classes);
+        }
+    }
+
+    /**
+     * Choose a concrete class to build an object of an abstract type, with
+     * a probability proportional to the rate of successful executions of
+     * the objects built with it
+     * @param abstractType interface or abstract class
+     * @param rand         the RandomGenerator to use
+     * @return name of a public concrete class, or null if none is known
+     */
+    public static String pick(String abstractType, RandomGenerator rand) {
+        List<String> classes;
+        synchronized (ImplementorIndex.class) {
+            if (implementors == null) {
+                return null;
+            }
+            classes = implementors.get(abstractType);
+        }
+        if (classes == null) {
+            return null;
+        }
+        ConstructionRecipes recipes = ConstructionRecipes.v();
+        double total = 0.0;
+        for (String className : classes) {
+            total += recipes.getClassWeight(className);
+        }
+        double choice = rand.nextDouble() * total;
+        for (String className : classes) {
+            choice -= recipes.getClassWeight(className);
+            if (choice < 0.0) {
+                return className;
+            }
+        }
+        // Rounding errors
+        return classes.get(classes.size() - 1);
+    }
+
+    private static Properties build(String javahome) throws IOException {
+        List<String> classNames = ImplementorIndex.listClasses(javahome);
+        G.reset();
+        soot.options.Options.v().set_weak_map_structures(true);
+        soot.options.Options.v().set_allow_phantom_refs(true);
+        Scene.v().loadBasicClasses();
+
+        TreeMap<String, TreeSet<String>> index = new TreeMap<String, TreeSet<String>>();
+        try {
+            for (String className : classNames) {
+                SootClass sClass;
+                try {
+                    sClass = Scene.v().loadClass(className, SootClass.SIGNATURES);
+                } catch (RuntimeException e) {
+                    logger.debug("Cannot load {}", className, e);
+                    continue;
+                }
+                if (!sClass.isPublic() || !sClass.isConcrete() || !ImplementorIndex.hasPublicConstructor(sClass)) {
+                    continue;
+                }
+                for (SootClass ancestor : ImplementorIndex.getAbstractAncestors(sClass)) {
+                    TreeSet<String> classes = index.get(ancestor.getName());
+                    if (classes == null) {
+                        classes = new TreeSet<String>();
+                        index.put(ancestor.getName(), classes);
+                    }
+                    classes.add(className);
+                }
+            }
+        } finally {
+            // The Soot context of the campaign starts from a fresh Scene
+            G.reset();
+        }
+
+        Properties properties = new Properties();
+        for (String type : index.keySet()) {
+            properties.setProperty(type, String.join(",", index.get(type)));
+        }
+        return properties;
+    }
+
+    private static boolean hasPublicConstructor(SootClass sClass) {
+        for (SootMethod method : sClass.getMethods()) {
+            if (method.isConstructor() && method.isPublic()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param sClass a class
+     * @return public interfaces and abstract classes extended by the class
+     */
+    private static HashSet<SootClass> getAbstractAncestors(SootClass sClass) {
+        HashSet<SootClass> visited = new HashSet<SootClass>();
+        ArrayList<SootClass> toVisit = new ArrayList<SootClass>();
+        toVisit.add(sClass);
+        while (!toVisit.isEmpty()) {
+            SootClass current = toVisit.remove(toVisit.size() - 1);
+            if (!visited.add(current)) {
+                continue;
+            }
+            if (current.hasSuperclass()) {
+                toVisit.add(current.getSuperclass());
+            }
+            toVisit.addAll(current.getInterfaces());
+        }
+        Iterator<SootClass> iterator = visited.iterator();
+        while (iterator.hasNext()) {
+            SootClass ancestor = iterator.next();
+            if (!ancestor.isPublic() || ancestor.isPhantom() || (!ancestor.isInterface() && !ancestor.isAbstract())) {
+                iterator.remove();
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * @param javahome the JDK
+     * @return names of the classes of the java.* packages
+     * @throws IOException
+     */
+    private static List<String> listClasses(String javahome) throws IOException {
+        ArrayList<String> classNames = new ArrayList<String>();
+        Path rtJar = Paths.get(javahome, "lib", "rt.jar");
+        if (Files.exists(rtJar)) {
+            // Java 8
+            try (JarFile jar = new JarFile(rtJar.toFile())) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    ImplementorIndex.addClassName(classNames, entries.nextElement().getName());
+                }
+            }
+        } else {
+            // Java 9+: modules of the running JVM
+            FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+            try (Stream<Path> modules = Files.list(jrt.getPath("/modules"))) {
+                Iterator<Path> iterModules = modules.iterator();
+                while (iterModules.hasNext()) {
+                    Path module = iterModules.next();
+                    if (!module.getFileName().toString().startsWith(PACKAGE_PREFIX)) {
+                        continue;
+                    }
+                    try (Stream<Path> files = Files.walk(module)) {
+                        Iterator<Path> iterFiles = files.iterator();
+                        while (iterFiles.hasNext()) {
+                            ImplementorIndex.addClassName(classNames,
+                                    module.relativize(iterFiles.next()).toString());
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(classNames);
+        return classNames;
+    }
+
+    private static void addClassName(List<String> classNames, String entry) {
+        if (!entry.endsWith(".class") || entry.endsWith("module-info.class") ||
+                entry.endsWith("package-info.class")) {
+            return;
+        }
+        String className = entry.substring(0, entry.length() - ".class".length()).replace('/', '.');
+        if (className.startsWith(PACKAGE_PREFIX)) {
+            classNames.add(className);
+        }
+    }
+}
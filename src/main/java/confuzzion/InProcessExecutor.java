@@ -0,0 +1,281 @@
+package confuzzion;
+
+import java.security.Permission;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor of programs inside the current JVM, used with --threads.
+ * Each program is loaded by a fresh ByteClassLoader and executed by a
+ * reusable worker thread. A worker still running at the timeout is
+ * interrupted and quarantined, and a new worker replaces it: threads are
+ * never stopped. Once too many threads are stuck inside the sandbox, the
+ * JVM must be recycled: isRecycleRequested() becomes true and the main loop
+ * stops, then the process exits with RECYCLE_EXIT_CODE.
+ * Calls to System.exit() and Runtime.halt() from sandboxed threads are
+ * turned into SecurityException when a SecurityManager can be installed.
+ * Class loaders of programs are tracked: when too many of them stay alive,
+ * or the Metaspace grows too much, idle workers are replaced and a GC is
+ * requested. If unloading still falls behind, the JVM must be recycled.
+ */
+public class InProcessExecutor {
+    /** Exit code asking fuzz.sh or WorkersLauncher to start a new JVM */
+    public static final int RECYCLE_EXIT_CODE = 75;
+
+    private static final ThreadGroup SANDBOXES = new ThreadGroup("confuzzion-sandboxes");
+    private static volatile boolean recycleRequested = false;
+    private static boolean securityManagerInstalled = false;
+
+    private ThreadGroup sandbox;
+    private ArrayDeque<Worker> idleWorkers;
+    private ArrayList<Worker> quarantined;
+    private int quarantineLimit;
+    private int createdWorkers;
+    private LoaderTracker loaderTracker;
+    private int loaderLimit;
+    private long metaspaceLimit;
+    private long runs;
+
+    private static final int MEMORY_CHECK_PERIOD = 100;
+    private static final int UNLOADING_WAIT = 10;
+    private static final int UNLOADING_TRIES = 20;
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessExecutor.class);
+
+    /**
+     * Forbid exit and halt from sandboxed threads, allow everything else
+     */
+    @SuppressWarnings("removal")
+    static class SandboxSecurityManager extends SecurityManager {
+        @Override
+        public void checkPermission(Permission perm) {
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+        }
+
+        @Override
+        public void checkExit(int status) {
+            if (SANDBOXES.parentOf(Thread.currentThread().getThreadGroup())) {
+                throw new SecurityException("Exit " + status + " intercepted");
+            }
+        }
+    }
+
+    /**
+     * Thread executing programs one after the other
+     */
+    static class Worker extends Thread {
+        private final SynchronousQueue<FutureTask<ExecutionResult>> tasks;
+        private volatile boolean quarantined;
+
+        public Worker(ThreadGroup group, String name) {
+            super(group, name);
+            this.tasks = new SynchronousQueue<FutureTask<ExecutionResult>>();
+            this.quarantined = false;
+            this.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!quarantined) {
+                FutureTask<ExecutionResult> task;
+                try {
+                    task = tasks.take();
+                } catch (InterruptedException e) {
+                    break;
+                }
+                task.run();
+                // Interruptions by the program must not reach the next one
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     * @param quarantineLimit number of stuck threads before requesting a new
+     *                        JVM
+     * @param loaderLimit     number of live class loaders before rotating the
+     *                        workers
+     * @param metaspaceLimit  Metaspace bytes before rotating the workers, 0
+     *                        for no limit
+     */
+    public InProcessExecutor(int quarantineLimit, int loaderLimit, long metaspaceLimit) {
+        InProcessExecutor.installSecurityManager();
+        this.sandbox = new ThreadGroup(SANDBOXES, "sandbox-" + Thread.currentThread().getName());
+        this.idleWorkers = new ArrayDeque<Worker>();
+        this.quarantined = new ArrayList<Worker>();
+        this.quarantineLimit = quarantineLimit;
+        this.createdWorkers = 0;
+        this.loaderTracker = new LoaderTracker();
+        this.loaderLimit = loaderLimit;
+        this.metaspaceLimit = metaspaceLimit;
+        this.runs = 0;
+    }
+
+    @SuppressWarnings("removal")
+    private static synchronized void installSecurityManager() {
+        if (securityManagerInstalled) {
+            return;
+        }
+        securityManagerInstalled = true;
+        try {
+            System.setSecurityManager(new SandboxSecurityManager());
+        } catch (UnsupportedOperationException | SecurityException e) {
+            // Java 18+ without -Djava.security.manager=allow
+            logger.warn("Cannot intercept System.exit() of programs, " +
+                    "run with -Djava.security.manager=allow on Java 18+", e);
+        }
+    }
+
+    /**
+     * @return true if a JVM has too many stuck threads and must be replaced
+     */
+    public static boolean isRecycleRequested() {
+        return recycleRequested;
+    }
+
+    /**
+     * Execute a program in a fresh class loader
+     * @param classNames names of the classes in instantiation order
+     * @param bytecodes  bytecode of each class
+     * @param timeout    time in ms before quarantining the worker
+     * @return result of the successful execution
+     * @throws ContractCheckException if the program violates a contract
+     * @throws InterruptedException if the execution timed out
+     * @throws RuntimeException if the program crashed
+     */
+    public ExecutionResult execute(List<String> classNames, List<byte[]> bytecodes,
+            long timeout) throws Exception {
+        if (++runs % MEMORY_CHECK_PERIOD == 0) {
+            this.checkMemory();
+        }
+        final ByteClassLoader loader = new ByteClassLoader(InProcessExecutor.class.getClassLoader());
+        loaderTracker.track(loader);
+        final String[] names = classNames.toArray(new String[classNames.size()]);
+        for (int i = 0; i < names.length; i++) {
+            loader.addClass(names[i], bytecodes.get(i));
+        }
+        FutureTask<ExecutionResult> task = new FutureTask<ExecutionResult>(new Callable<ExecutionResult>() {
+            @Override
+            public ExecutionResult call() {
+                Thread.currentThread().setContextClassLoader(loader);
+                try {
+                    return ExecutionResult.execute(loader, names);
+                } finally {
+                    Thread.currentThread().setContextClassLoader(null);
+                }
+            }
+        });
+
+        Worker worker = idleWorkers.poll();
+        if (worker == null || !worker.isAlive()) {
+            worker = new Worker(sandbox, sandbox.getName() + "-worker" + createdWorkers++);
+            worker.start();
+        }
+        worker.tasks.put(task);
+
+        ExecutionResult result;
+        try {
+            result = task.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            this.quarantine(worker);
+            throw new InterruptedException();
+        } catch (ExecutionException e) {
+            idleWorkers.push(worker);
+            throw new RuntimeException(e.getCause());
+        }
+        idleWorkers.push(worker);
+        this.checkStuckThreads();
+        result.check();
+        return result;
+    }
+
+    private void quarantine(Worker worker) {
+        worker.quarantined = true;
+        worker.interrupt();
+        quarantined.add(worker);
+        logger.warn("Worker {} quarantined", worker.getName());
+        this.checkStuckThreads();
+    }
+
+    /**
+     * Count threads of the sandbox which are neither idle workers nor
+     * finished: quarantined workers and threads started by programs
+     */
+    private void checkStuckThreads() {
+        Iterator<Worker> iterator = quarantined.iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().isAlive()) {
+                iterator.remove();
+            }
+        }
+        int stuck = sandbox.activeCount() - idleWorkers.size();
+        if (stuck > quarantineLimit && !recycleRequested) {
+            logger.warn("{} stuck threads ({} quarantined workers), JVM must be recycled",
+                    stuck, quarantined.size());
+            recycleRequested = true;
+        }
+    }
+
+    private boolean isOverMemoryLimits() {
+        return loaderTracker.getLiveLoaders() > loaderLimit ||
+                (metaspaceLimit > 0 && LoaderTracker.getMetaspaceUsed() > metaspaceLimit);
+    }
+
+    /**
+     * Rotate workers when class loaders are not unloaded fast enough, and
+     * request a new JVM if it does not help
+     */
+    private void checkMemory() throws InterruptedException {
+        if (!this.isOverMemoryLimits()) {
+            return;
+        }
+        // Idle workers may still reference the last programs (thread locals,
+        // inherited context), new workers are started on next execution
+        this.stop();
+        System.gc();
+        for (int i = 0; i < UNLOADING_TRIES && this.isOverMemoryLimits(); i++) {
+            // Phantom references are enqueued after the GC
+            Thread.sleep(UNLOADING_WAIT);
+        }
+        if (this.isOverMemoryLimits() && !recycleRequested) {
+            logger.warn("{} live class loaders, {} bytes of Metaspace, JVM must be recycled",
+                    loaderTracker.getLiveLoaders(), LoaderTracker.getMetaspaceUsed());
+            recycleRequested = true;
+        } else {
+            logger.info("Workers rotated, {} live class loaders", loaderTracker.getLiveLoaders());
+        }
+    }
+
+    /**
+     * @return number of class loaders of programs not collected yet
+     */
+    public int getLiveLoaders() {
+        return loaderTracker.getLiveLoaders();
+    }
+
+    /**
+     * Stop idle workers. Quarantined workers are left to the JVM exit.
+     */
+    public void stop() {
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            worker.quarantined = true;
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package confuzzion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import soot.Value;
+import soot.jimple.ClassConstant;
+import soot.jimple.DoubleConstant;
+import soot.jimple.FloatConstant;
+import soot.jimple.IntConstant;
+import soot.jimple.LongConstant;
+import soot.jimple.NullConstant;
+import soot.jimple.StringConstant;
+
+/**
+ * Append-only binary journal of the decisions of a campaign.
+ * The header holds the seed of the RandomGenerator, the target classes and
+ * the options changing the generated programs. Then each iteration appends
+ * a record: the mutation (kind chosen by the MutationScheduler, type,
+ * target method, constants, number of constants changes, status) or the
+ * failure of the mutation, and the reverts of the mutations stack.
+ * Executions are the only part of a campaign which is not deterministic for
+ * a given seed, so Replay rebuilds the program of any iteration from these
+ * records without executing anything.
+ */
+public class Journal implements Closeable {
+    public static final String FILE_NAME = "journal.bin";
+
+    private static final int MAGIC = 0x434a524e;
+    private static final int VERSION = 1;
+
+    static final byte RECORD_MUTATION = 1;
+    static final byte RECORD_FAILED = 2;
+    static final byte RECORD_REVERT = 3;
+
+    private static final byte CONSTANT_INT = 'I';
+    private static final byte CONSTANT_LONG = 'J';
+    private static final byte CONSTANT_FLOAT = 'F';
+    private static final byte CONSTANT_DOUBLE = 'D';
+    private static final byte CONSTANT_STRING = 'S';
+    private static final byte CONSTANT_CLASS = 'C';
+    private static final byte CONSTANT_NULL = 'N';
+    private static final byte CONSTANT_OTHER = '?';
+
+    private DataOutputStream output;
+
+    /**
+     * Options of the campaign written in the header
+     */
+    static class Header {
+        long seed;
+        String[] targets;
+        String javaHome;
+        int javaVersion;
+        int classNumberLimit;
+        boolean fixedNumberOfClasses;
+        boolean allowUnsafeAssignment;
+        boolean uniformMethodsDistribution;
+    }
+
+    /**
+     * One decision of the campaign
+     */
+    static class Record {
+        byte kind;
+        long iteration;
+        // RECORD_MUTATION and RECORD_FAILED
+        long counter;
+        // -1 without MutationScheduler
+        int mutationKind;
+        String mutationClass;
+        // RECORD_MUTATION
+        String targetMethod;
+        int constantsChanges;
+        // null if a constant cannot be read back
+        List<Value> constants;
+        Status status;
+        // RECORD_REVERT
+        int reverted;
+    }
+
+    /**
+     * Create a new journal in the output folder, replacing an existing one
+     * @param resultFolder output folder of the campaign
+     * @param seed         seed of the RandomGenerator
+     * @param targets      target classes
+     * @throws IOException
+     */
+    public Journal(Path resultFolder, long seed, String[] targets) throws IOException {
+        Path file = Paths.get(resultFolder.toAbsolutePath().toString(), FILE_NAME);
+        this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(seed);
+        output.writeUTF(String.join(":", targets));
+        output.writeUTF(System.getProperty("java.home"));
+        output.writeInt(ConfuzzionOptions.v().java_version);
+        output.writeInt(ConfuzzionOptions.v().class_number_limit);
+        output.writeBoolean(ConfuzzionOptions.v().fixed_number_of_classes);
+        output.writeBoolean(ConfuzzionOptions.v().allow_unsafe_assignment);
+        output.writeBoolean(ConfuzzionOptions.v().use_uniform_distribution_for_methods);
+        output.flush();
+    }
+
+    /**
+     * Append an executed mutation
+     * @param iteration        iteration of the main loop
+     * @param counter          counter of names before the mutation
+     * @param kind             kind chosen by the MutationScheduler, -1 if
+     *                         there is none
+     * @param mutation         the mutation
+     * @param constantsChanges calls to randomConstants() on the mutation
+     * @param status           result, only SUCCESS keeps the mutation
+     * @throws IOException
+     */
+    public void writeMutation(long iteration, long counter, int kind, Mutation mutation,
+            int constantsChanges, Status status) throws IOException {
+        output.writeByte(RECORD_MUTATION);
+        output.writeLong(iteration);
+        output.writeLong(counter);
+        output.writeByte(kind);
+        output.writeUTF(mutation.getClass().getSimpleName());
+        if (mutation instanceof CallMethodMutation) {
+            output.writeUTF(((CallMethodMutation)mutation).getCalledMethod().getSignature());
+        } else {
+            output.writeUTF("");
+        }
+        output.writeInt(constantsChanges);
+        List<Value> constants = mutation.getConstants();
+        output.writeInt(constants.size());
+        for (Value constant : constants) {
+            Journal.writeConstant(output, constant);
+        }
+        output.writeByte(status.ordinal());
+        output.flush();
+    }
+
+    /**
+     * Append a mutation which could not be applied
+     * @param iteration     iteration of the main loop
+     * @param counter       counter of names before the mutation
+     * @param kind          kind chosen by the MutationScheduler, -1 if
+     *                      there is none
+     * @param mutationClass class of the mutation
+     * @throws IOException
+     */
+    public void writeFailure(long iteration, long counter, int kind,
+            Class<?> mutationClass) throws IOException {
+        output.writeByte(RECORD_FAILED);
+        output.writeLong(iteration);
+        output.writeLong(counter);
+        output.writeByte(kind);
+        output.writeUTF(mutationClass.getSimpleName());
+        output.flush();
+    }
+
+    /**
+     * Append a revert of the mutations stack
+     * @param iteration iteration of the main loop
+     * @param reverted  number of mutations removed from the stack
+     * @throws IOException
+     */
+    public void writeRevert(long iteration, int reverted) throws IOException {
+        output.writeByte(RECORD_REVERT);
+        output.writeLong(iteration);
+        output.writeInt(reverted);
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    private static void writeConstant(DataOutputStream output, Value constant) throws IOException {
+        if (constant instanceof IntConstant) {
+            output.writeByte(CONSTANT_INT);
+            output.writeInt(((IntConstant)constant).value);
+        } else if (constant instanceof LongConstant) {
+            output.writeByte(CONSTANT_LONG);
+            output.writeLong(((LongConstant)constant).value);
+        } else if (constant instanceof FloatConstant) {
+            output.writeByte(CONSTANT_FLOAT);
+            output.writeFloat(((FloatConstant)constant).value);
+        } else if (constant instanceof DoubleConstant) {
+            output.writeByte(CONSTANT_DOUBLE);
+            output.writeDouble(((DoubleConstant)constant).value);
+        } else if (constant instanceof StringConstant) {
+            output.writeByte(CONSTANT_STRING);
+            output.writeUTF(((StringConstant)constant).value);
+        } else if (constant instanceof ClassConstant) {
+            output.writeByte(CONSTANT_CLASS);
+            output.writeUTF(((ClassConstant)constant).value);
+        } else if (constant instanceof NullConstant) {
+            output.writeByte(CONSTANT_NULL);
+        } else {
+            output.writeByte(CONSTANT_OTHER);
+            output.writeUTF(constant.toString());
+        }
+    }
+
+    private static Value readConstant(DataInputStream input) throws IOException {
+        byte tag = input.readByte();
+        switch (tag) {
+        case CONSTANT_INT:
+            return IntConstant.v(input.readInt());
+        case CONSTANT_LONG:
+            return LongConstant.v(input.readLong());
+        case CONSTANT_FLOAT:
+            return FloatConstant.v(input.readFloat());
+        case CONSTANT_DOUBLE:
+            return DoubleConstant.v(input.readDouble());
+        case CONSTANT_STRING:
+            return StringConstant.v(input.readUTF());
+        case CONSTANT_CLASS:
+            return ClassConstant.v(input.readUTF());
+        case CONSTANT_NULL:
+            return NullConstant.v();
+        case CONSTANT_OTHER:
+            input.readUTF();
+            return null;
+        default:
+            throw new IOException("Unknown constant tag " + tag);
+        }
+    }
+
+    /**
+     * Sequential reader of a journal
+     */
+    static class Reader implements Closeable {
+        private DataInputStream input;
+        private Header header;
+
+        public Reader(Path file) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            if (input.readInt() != MAGIC) {
+                input.close();
+                throw new IOException(file + " is not a journal");
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                input.close();
+                throw new IOException("Unsupported journal version " + version);
+            }
+            header = new Header();
+            header.seed = input.readLong();
+            header.targets = input.readUTF().split(":");
+            header.javaHome = input.readUTF();
+            header.javaVersion = input.readInt();
+            header.classNumberLimit = input.readInt();
+            header.fixedNumberOfClasses = input.readBoolean();
+            header.allowUnsafeAssignment = input.readBoolean();
+            header.uniformMethodsDistribution = input.readBoolean();
+        }
+
+        public Header getHeader() {
+            return header;
+        }
+
+        /**
+         * @return next record, or null at the end of the journal. The last
+         *         record of a killed campaign may be truncated and is ignored.
+         * @throws IOException
+         */
+        public Record next() throws IOException {
+            Record record = new Record();
+            try {
+                record.kind = input.readByte();
+                record.iteration = input.readLong();
+                switch (record.kind) {
+                case RECORD_MUTATION:
+                    record.counter = input.readLong();
+                    record.mutationKind = input.readByte();
+                    record.mutationClass = input.readUTF();
+                    record.targetMethod = input.readUTF();
+                    record.constantsChanges = input.readInt();
+                    int size = input.readInt();
+                    record.constants = new ArrayList<Value>(size);
+                    for (int i = 0; i < size; i++) {
+                        Value constant = Journal.readConstant(input);
+                        if (record.constants != null && constant != null) {
+                            record.constants.add(constant);
+                        } else {
+                            record.constants = null;
+                        }
+                    }
+                    record.status = Status.values()[input.readByte()];
+                    break;
+                case RECORD_FAILED:
+                    record.counter = input.readLong();
+                    record.mutationKind = input.readByte();
+                    record.mutationClass = input.readUTF();
+                    break;
+                case RECORD_REVERT:
+                    record.reverted = input.readInt();
+                    break;
+                default:
+                    throw new IOException("Unknown record kind " + record.kind);
+                }
+            } catch (EOFException e) {
+                return null;
+            }
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
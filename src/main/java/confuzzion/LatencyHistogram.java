@@ -0,0 +1,60 @@
+package confuzzion;
+
+/**
+ * Histogram of execution latencies with geometrically growing buckets, so
+ * percentiles are estimated with a bounded relative error whatever the
+ * latency is.
+ */
+public class LatencyHistogram {
+    private static final double BUCKET_RATIO = 1.1;
+    // Up to 1.1^191 ms ~ 22 h, above any sensible --timeout-ceiling. Longer
+    // latencies are counted in the last bucket
+    private static final int NUMBER_OF_BUCKETS = 192;
+    private static final double LOG_RATIO = Math.log(BUCKET_RATIO);
+
+    private long[] buckets;
+    private long samples;
+
+    public LatencyHistogram() {
+        buckets = new long[NUMBER_OF_BUCKETS];
+        samples = 0;
+    }
+
+    private static int bucketOf(long miliseconds) {
+        if (miliseconds <= 1) {
+            return 0;
+        }
+        int index = (int)Math.ceil(Math.log(miliseconds) / LOG_RATIO);
+        return Math.min(index, NUMBER_OF_BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return (long)Math.ceil(Math.pow(BUCKET_RATIO, bucket));
+    }
+
+    public void addLatency(long miliseconds) {
+        buckets[bucketOf(miliseconds)]++;
+        samples++;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Estimate a percentile of the recorded latencies
+     * @param percentile between 0.0 and 1.0
+     * @return upper bound of the bucket containing the percentile in ms
+     */
+    public long getPercentile(double percentile) {
+        long target = (long)Math.ceil(percentile * samples);
+        long count = 0;
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            count += buckets[i];
+            if (count >= target && count > 0) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(NUMBER_OF_BUCKETS - 1);
+    }
+}
@@ -0,0 +1,67 @@
+package confuzzion;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashSet;
+
+/**
+ * Track class loaders of programs executed inside the current JVM with
+ * phantom references, to know how many of them are not collected yet.
+ * A loader and its classes can only be unloaded together, so live loaders
+ * and the Metaspace usage tell whether class unloading keeps up with the
+ * fuzzer.
+ */
+public class LoaderTracker {
+    private ReferenceQueue<ClassLoader> queue;
+    // Phantom references must stay reachable until they are enqueued
+    private HashSet<Reference<? extends ClassLoader>> references;
+    private long tracked;
+
+    public LoaderTracker() {
+        this.queue = new ReferenceQueue<ClassLoader>();
+        this.references = new HashSet<Reference<? extends ClassLoader>>();
+        this.tracked = 0;
+    }
+
+    /**
+     * Track a new class loader
+     * @param loader the class loader
+     */
+    public synchronized void track(ClassLoader loader) {
+        references.add(new PhantomReference<ClassLoader>(loader, queue));
+        tracked++;
+    }
+
+    /**
+     * @return number of tracked class loaders not collected yet
+     */
+    public synchronized int getLiveLoaders() {
+        Reference<? extends ClassLoader> reference;
+        while ((reference = queue.poll()) != null) {
+            references.remove(reference);
+        }
+        return references.size();
+    }
+
+    /**
+     * @return number of class loaders tracked since the start
+     */
+    public synchronized long getTracked() {
+        return tracked;
+    }
+
+    /**
+     * @return bytes used by the Metaspace memory pool, -1 if there is none
+     */
+    public static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals("Metaspace")) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,478 @@
+package confuzzion;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import soot.Body;
+import soot.Local;
+import soot.RefType;
+import soot.SootClass;
+import soot.SootField;
+import soot.Type;
+import soot.util.Chain;
+
+/**
+ * Locals of a Body grouped by type, to find the locals and the fields
+ * compatible with a type without scanning all locals of the body.
+ * BodyMutation changes locals through the index to keep it up to date. An
+ * index is rebuilt from the body when the locals were changed directly
+ * (MutantGenerator, AddMethodMutation), found by the modification count of
+ * the locals of the body.
+ * Compatible locals are ordered by type, then by addition to the index, so
+ * that a seeded campaign makes the same choices when replayed.
+ */
+public class LocalIndex {
+    private static final Map<Body, LocalIndex> indexes =
+            Collections.synchronizedMap(new WeakHashMap<Body, LocalIndex>());
+    // Changed when fields are added to or removed from classes
+    private static final AtomicLong fieldsVersion = new AtomicLong();
+
+    // A type is removed with its last local, so that locals added then
+    // removed (contracts checks, undone mutations) leave the order unchanged
+    private LinkedHashMap<Type, ArrayList<Local>> localsByType;
+    // All locals, removed by moving the last local to their position
+    private ArrayList<Local> locals;
+    private IdentityHashMap<Local, Integer> positions;
+    // Modification count of the locals of the body indexed
+    private long modificationCount;
+    // Class of the body, accessing the fields
+    private SootClass accessor;
+    // Locals compatible with each target type or accepted by each filter,
+    // built when needed and dropped when a type of locals changes
+    private HashMap<Object, Selection> selectedLocals;
+    private HashMap<Type, ArrayList<Selection>> localsSelectionsByType;
+    // Fields compatible with each target type, also dropped when the fields
+    // of classes change
+    private HashMap<Type, Selection> compatibleFields;
+    private HashMap<Type, ArrayList<Selection>> fieldsSelectionsByType;
+    private long compatibleFieldsVersion;
+
+    /**
+     * Filter of the types of locals. It must always give the same answer
+     * for a type, while locals of this type are in the body.
+     */
+    public interface TypeFilter {
+        boolean accepts(Type type);
+    }
+
+    /**
+     * Lists of locals of some types, referencing the lists of the index, and
+     * the fields accessed through them. A selection is registered in
+     * selectionsByType once per list of a type, so that its count follows
+     * the locals of the type.
+     */
+    private static class Selection {
+        private ArrayList<ArrayList<Local>> lists;
+        // Field accessed through the locals of each list, null for locals
+        private ArrayList<SootField> fields;
+        // Number of locals, or of couples (field, local)
+        private int count;
+
+        public Selection(boolean withFields) {
+            this.lists = new ArrayList<ArrayList<Local>>(5);
+            this.fields = withFields ? new ArrayList<SootField>(5) : null;
+            this.count = 0;
+        }
+
+        private void add(ArrayList<Local> locals, HashMap<Type, ArrayList<Selection>> selectionsByType) {
+            lists.add(locals);
+            count += locals.size();
+            Type type = locals.get(0).getType();
+            ArrayList<Selection> selections = selectionsByType.get(type);
+            if (selections == null) {
+                selections = new ArrayList<Selection>(2);
+                selectionsByType.put(type, selections);
+            }
+            selections.add(this);
+        }
+
+        /**
+         * @param choice index in [0, count)
+         * @return index of the list holding the choice
+         */
+        private int listOf(int choice) {
+            int i = 0;
+            while (choice >= lists.get(i).size()) {
+                choice -= lists.get(i).size();
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * @param choice index in [0, count)
+         * @return local at this index of the concatenated lists
+         */
+        private Local get(int choice) {
+            for (ArrayList<Local> locals : lists) {
+                if (choice < locals.size()) {
+                    return locals.get(choice);
+                }
+                choice -= locals.size();
+            }
+            return null;
+        }
+    }
+
+    private LocalIndex(SootClass accessor) {
+        this.localsByType = new LinkedHashMap<Type, ArrayList<Local>>();
+        this.locals = new ArrayList<Local>();
+        this.positions = new IdentityHashMap<Local, Integer>();
+        this.modificationCount = -1;
+        this.accessor = accessor;
+        this.selectedLocals = new HashMap<Object, Selection>();
+        this.localsSelectionsByType = new HashMap<Type, ArrayList<Selection>>();
+        this.compatibleFields = new HashMap<Type, Selection>();
+        this.fieldsSelectionsByType = new HashMap<Type, ArrayList<Selection>>();
+        this.compatibleFieldsVersion = -1;
+    }
+
+    /**
+     * Get the index of a body, building it if needed
+     * @param body the body
+     * @return index of the locals of the body
+     */
+    public static LocalIndex of(Body body) {
+        LocalIndex index;
+        synchronized (indexes) {
+            index = indexes.get(body);
+            if (index == null) {
+                index = new LocalIndex(body.getMethod().getDeclaringClass());
+                indexes.put(body, index);
+            }
+        }
+        if (index.modificationCount != body.getLocals().getModificationCount()) {
+            index.rebuild(body);
+        }
+        return index;
+    }
+
+    /**
+     * Add a local to a body, and to its index if it is up to date
+     * @param body      the body
+     * @param local     the local
+     * @param successor local of the body before which it is added, null to
+     *                  add it at the end
+     */
+    static void insertLocal(Body body, Local local, Local successor) {
+        Chain<Local> locals = body.getLocals();
+        LocalIndex index = indexes.get(body);
+        boolean upToDate = index != null && index.modificationCount == locals.getModificationCount();
+        if (successor == null) {
+            locals.addLast(local);
+        } else {
+            locals.insertBefore(local, successor);
+        }
+        if (upToDate) {
+            index.add(local);
+            index.modificationCount = locals.getModificationCount();
+        }
+    }
+
+    /**
+     * Remove a local from a body, and from its index if it is up to date
+     * @param body  the body
+     * @param local the local
+     */
+    static void removeLocal(Body body, Local local) {
+        Chain<Local> locals = body.getLocals();
+        LocalIndex index = indexes.get(body);
+        boolean upToDate = index != null && index.modificationCount == locals.getModificationCount();
+        locals.remove(local);
+        if (upToDate) {
+            index.remove(local);
+            index.modificationCount = locals.getModificationCount();
+        }
+    }
+
+    /**
+     * Fields were added to or removed from a class: compatible fields must
+     * be found again
+     */
+    static void fieldsChanged() {
+        fieldsVersion.incrementAndGet();
+    }
+
+    /**
+     * Copy all indexes. Undoing then redoing mutations restores the bodies
+     * but not the order of their indexes, which drives random choices.
+     * @return copy of the index of each body
+     */
+    static HashMap<Body, LocalIndex> copyAll() {
+        HashMap<Body, LocalIndex> copies = new HashMap<Body, LocalIndex>();
+        synchronized (indexes) {
+            for (Map.Entry<Body, LocalIndex> entry : indexes.entrySet()) {
+                LocalIndex index = entry.getValue();
+                LocalIndex copy = new LocalIndex(index.accessor);
+                for (Map.Entry<Type, ArrayList<Local>> sameType : index.localsByType.entrySet()) {
+                    copy.localsByType.put(sameType.getKey(), new ArrayList<Local>(sameType.getValue()));
+                }
+                copy.locals.addAll(index.locals);
+                copy.positions.putAll(index.positions);
+                // Offset from the modification count of the body, which
+                // changes when mutations are undone then redone
+                copy.modificationCount = index.modificationCount -
+                        entry.getKey().getLocals().getModificationCount();
+                copies.put(entry.getKey(), copy);
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Replace the indexes of bodies by copies
+     * @param copies result of copyAll()
+     */
+    static void restoreAll(HashMap<Body, LocalIndex> copies) {
+        for (Map.Entry<Body, LocalIndex> entry : copies.entrySet()) {
+            entry.getValue().modificationCount += entry.getKey().getLocals().getModificationCount();
+        }
+        indexes.putAll(copies);
+    }
+
+    private void rebuild(Body body) {
+        localsByType.clear();
+        locals.clear();
+        positions.clear();
+        this.dropSelections();
+        for (Local local : body.getLocals()) {
+            this.add(local);
+        }
+        modificationCount = body.getLocals().getModificationCount();
+    }
+
+    private void dropSelections() {
+        selectedLocals.clear();
+        localsSelectionsByType.clear();
+        this.dropCompatibleFields();
+    }
+
+    private void dropCompatibleFields() {
+        compatibleFields.clear();
+        fieldsSelectionsByType.clear();
+    }
+
+    private static void updateCounts(HashMap<Type, ArrayList<Selection>> selectionsByType,
+            Type type, int delta) {
+        ArrayList<Selection> selections = selectionsByType.get(type);
+        if (selections != null) {
+            for (Selection selection : selections) {
+                selection.count += delta;
+            }
+        }
+    }
+
+    /**
+     * Index a local added to the body
+     * @param local the local
+     */
+    private void add(Local local) {
+        if (positions.containsKey(local)) {
+            return;
+        }
+        positions.put(local, locals.size());
+        locals.add(local);
+        ArrayList<Local> sameType = localsByType.get(local.getType());
+        if (sameType == null) {
+            sameType = new ArrayList<Local>(4);
+            localsByType.put(local.getType(), sameType);
+            // Locals and fields of a new type
+            this.dropSelections();
+        } else {
+            LocalIndex.updateCounts(localsSelectionsByType, local.getType(), 1);
+            LocalIndex.updateCounts(fieldsSelectionsByType, local.getType(), 1);
+        }
+        sameType.add(local);
+    }
+
+    /**
+     * Forget a local removed from the body
+     * @param local the local
+     */
+    private void remove(Local local) {
+        Integer position = positions.remove(local);
+        if (position == null) {
+            return;
+        }
+        Local last = locals.remove(locals.size() - 1);
+        if (last != local) {
+            locals.set(position, last);
+            positions.put(last, position);
+        }
+        ArrayList<Local> sameType = localsByType.get(local.getType());
+        for (int i = sameType.size() - 1; i >= 0; i--) {
+            if (sameType.get(i) == local) {
+                sameType.remove(i);
+                break;
+            }
+        }
+        if (sameType.isEmpty()) {
+            localsByType.remove(local.getType());
+            this.dropSelections();
+        } else {
+            LocalIndex.updateCounts(localsSelectionsByType, local.getType(), -1);
+            LocalIndex.updateCounts(fieldsSelectionsByType, local.getType(), -1);
+        }
+    }
+
+    /**
+     * @return number of locals of the body
+     */
+    public int size() {
+        return locals.size();
+    }
+
+    /**
+     * @param position index in [0, size())
+     * @return a local of the body
+     */
+    public Local get(int position) {
+        return locals.get(position);
+    }
+
+    private static boolean isCompatible(TypeHierarchy hierarchy, Type type, Type other) {
+        // Same type or sub-type is compatible for assignment
+        return other == type ||
+                (type instanceof RefType &&
+                        other instanceof RefType &&
+                        hierarchy.isSuperclassOf((RefType)type, (RefType)other));
+    }
+
+    private Selection select(Object key, TypeFilter filter) {
+        Selection selection = selectedLocals.get(key);
+        if (selection != null) {
+            return selection;
+        }
+        selection = new Selection(false);
+        for (Map.Entry<Type, ArrayList<Local>> entry : localsByType.entrySet()) {
+            if (filter.accepts(entry.getKey())) {
+                selection.add(entry.getValue(), localsSelectionsByType);
+            }
+        }
+        selectedLocals.put(key, selection);
+        return selection;
+    }
+
+    private Selection selectCompatibleLocals(final Type type) {
+        Selection selection = selectedLocals.get(type);
+        if (selection != null) {
+            return selection;
+        }
+        final TypeHierarchy hierarchy = TypeHierarchy.v();
+        return this.select(type, new TypeFilter() {
+            @Override
+            public boolean accepts(Type other) {
+                return LocalIndex.isCompatible(hierarchy, type, other);
+            }
+        });
+    }
+
+    /**
+     * @param type target type
+     * @return number of locals that can be assigned to type
+     */
+    public int countCompatibleLocals(Type type) {
+        if (!(type instanceof RefType)) {
+            // Only the same type is compatible
+            ArrayList<Local> locals = localsByType.get(type);
+            return locals == null ? 0 : locals.size();
+        }
+        return this.selectCompatibleLocals(type).count;
+    }
+
+    /**
+     * @param type   target type
+     * @param choice index in [0, countCompatibleLocals(type))
+     * @return a local that can be assigned to type
+     */
+    public Local getCompatibleLocal(Type type, int choice) {
+        if (!(type instanceof RefType)) {
+            return localsByType.get(type).get(choice);
+        }
+        return this.selectCompatibleLocals(type).get(choice);
+    }
+
+    /**
+     * @param filter filter of the types, identifying the selection
+     * @return number of locals whose type is accepted by filter
+     */
+    public int countLocals(TypeFilter filter) {
+        return this.select(filter, filter).count;
+    }
+
+    /**
+     * @param filter filter of the types, identifying the selection
+     * @param choice index in [0, countLocals(filter))
+     * @return a local whose type is accepted by filter
+     */
+    public Local getLocal(TypeFilter filter, int choice) {
+        return this.select(filter, filter).get(choice);
+    }
+
+    private Selection selectCompatibleFields(Type type) {
+        long version = fieldsVersion.get();
+        if (compatibleFieldsVersion != version) {
+            this.dropCompatibleFields();
+            compatibleFieldsVersion = version;
+        }
+        Selection compatible = compatibleFields.get(type);
+        if (compatible != null) {
+            return compatible;
+        }
+        compatible = new Selection(true);
+        TypeHierarchy hierarchy = TypeHierarchy.v();
+        for (Map.Entry<Type, ArrayList<Local>> entry : localsByType.entrySet()) {
+            ArrayList<Local> locals = entry.getValue();
+            if (!(entry.getKey() instanceof RefType)) {
+                continue;
+            }
+            SootClass sClass = Util.getOrLoadSootClass(entry.getKey().toString());
+            for (SootField field : sClass.getFields()) {
+                // Is field accessible ?
+                if (sClass == accessor || field.isPublic() || field.isProtected()) {
+                    // Is field compatible ?
+                    if (LocalIndex.isCompatible(hierarchy, type, field.getType())) {
+                        compatible.fields.add(field);
+                        compatible.add(locals, fieldsSelectionsByType);
+                    }
+                }
+            }
+        }
+        compatibleFields.put(type, compatible);
+        return compatible;
+    }
+
+    /**
+     * @param type target type
+     * @return number of couples (field, local) where the field can be
+     *         assigned to type and is accessible through the local
+     */
+    public int countCompatibleFields(Type type) {
+        return this.selectCompatibleFields(type).count;
+    }
+
+    /**
+     * @param type   target type
+     * @param choice index in [0, countCompatibleFields(type))
+     * @return field of the chosen couple (field, local)
+     */
+    public SootField getCompatibleField(Type type, int choice) {
+        Selection compatible = this.selectCompatibleFields(type);
+        return compatible.fields.get(compatible.listOf(choice));
+    }
+
+    /**
+     * @param type   target type
+     * @param choice index in [0, countCompatibleFields(type))
+     * @return local of the chosen couple (field, local)
+     */
+    public Local getCompatibleFieldBase(Type type, int choice) {
+        return this.selectCompatibleFields(type).get(choice);
+    }
+}
@@ -2,23 +2,22 @@ package confuzzion;
 
 import soot.SootMethod;
 
-import org.apache.commons.math3.distribution.BinomialDistribution;
-
 public class MethodComplexity {
-    private final static double confidence = 0.95;
+    // Quantile of the standard normal distribution for a confidence of 0.95
+    private final static double z = 1.645;
 
     private SootMethod method;
     private double failureRate;
     private long all;
     private long failures;
-    private double probability;
+    private LatencyHistogram latencies;
 
     public MethodComplexity(SootMethod method) {
         this.method = method;
         failureRate = 1.0;
         all = 1;
         failures = 1;
-        probability = 0.0;
+        latencies = null;
     }
 
     public SootMethod getMethod() {
@@ -36,21 +35,47 @@ public class MethodComplexity {
         failureRate = (double)failures / all;
     }
 
+    public long getAll() {
+        return all;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Restore the statistics of a previous campaign
+     * @param all      number of calls
+     * @param failures number of failed calls
+     */
+    public void setCounts(long all, long failures) {
+        this.all = all;
+        this.failures = failures;
+        failureRate = (double)failures / all;
+    }
+
     public double getFailureRate() {
         return failureRate;
     }
 
+    /**
+     * Upper bound of the failure rate with a confidence of 0.95, with the
+     * normal approximation of the binomial distribution
+     * @return score in [0, 1]
+     */
     public double getScore() {
-        BinomialDistribution bin = new BinomialDistribution((int) all, failureRate);
-        double score = ((double)bin.inverseCumulativeProbability(confidence) / all);
-        return score;
-    }
-
-    public void setProbability(double p) {
-        probability = p;
+        double score = failureRate + z * Math.sqrt(failureRate * (1.0 - failureRate) / all);
+        return Math.min(score, 1.0);
     }
 
-    public double getProbability() {
-        return probability;
+    /**
+     * Latencies of successful executions of programs calling this method
+     * @return histogram of latencies
+     */
+    public LatencyHistogram getLatencies() {
+        if (latencies == null) {
+            latencies = new LatencyHistogram();
+        }
+        return latencies;
     }
 }
@@ -4,8 +4,6 @@ import soot.ArrayType;
 import soot.Body;
 import soot.Local;
 import soot.PrimType;
-import soot.RefType;
-import soot.Scene;
 import soot.SootClass;
 import soot.SootField;
 import soot.SootMethod;
@@ -30,6 +28,10 @@ import java.util.List;
 public abstract class MethodMutation extends Mutation {
     protected SootMethod method;
     protected BodyMutation mutation;
+    // Constructors and static methods called by genObject()
+    private ArrayList<SootMethod> recipes;
+    // Depth of nested genObject() calls
+    private int genDepth;
 
     /**
      * Constructor
@@ -40,12 +42,21 @@ public abstract class MethodMutation extends Mutation {
         super(rand);
         this.method = method;
         this.mutation = new BodyMutation(method.getActiveBody());
+        this.recipes = new ArrayList<SootMethod>(2);
+        this.genDepth = 0;
     }
 
     public Body getBody() {
         return method.getActiveBody();
     }
 
+    /**
+     * @return constructors and static methods used to build objects
+     */
+    public List<SootMethod> getRecipes() {
+        return recipes;
+    }
+
     /**
      * Remove the mutation from method body.
      */
@@ -54,6 +65,14 @@ public abstract class MethodMutation extends Mutation {
         mutation.undo();
     }
 
+    /**
+     * Add again the mutation to method body.
+     */
+    @Override
+    public void redo() {
+        mutation.redo();
+    }
+
     /**
      * Change all constants added by the mutation
      */
@@ -69,6 +88,29 @@ public abstract class MethodMutation extends Mutation {
                 box.setValue(val);
             }
         }
+        mutation.setDirty();
+    }
+
+    @Override
+    public List<Value> getConstants() {
+        List<Value> constants = new ArrayList<Value>();
+        for (ValueBox box : mutation.getUseBoxes()) {
+            if (box.getValue() instanceof Constant) {
+                constants.add(box.getValue());
+            }
+        }
+        return constants;
+    }
+
+    @Override
+    public void setConstants(List<Value> constants) {
+        int i = 0;
+        for (ValueBox box : mutation.getUseBoxes()) {
+            if (box.getValue() instanceof Constant) {
+                box.setValue(constants.get(i++));
+            }
+        }
+        mutation.setDirty();
     }
 
     /**
@@ -78,43 +120,18 @@ public abstract class MethodMutation extends Mutation {
      * @return NullConstant or an appropriate Value
      */
     protected Value getOrGenValue(Body body, Type type) {
-        ArrayList<Local> compatibleLocals = new ArrayList<Local>(5);
-        ArrayList<SootField> compatibleFields = new ArrayList<SootField>(5);
-        ArrayList<Local> correspondingLocals = new ArrayList<Local>(5);
-        for (Local loc : body.getLocals()) {
-            // Same type or sub-type is compatible for assignment
-            if (loc.getType() == type ||
-                    (type instanceof RefType &&
-                            loc.getType() instanceof RefType &&
-                            type.merge(loc.getType(), Scene.v()) == type)) {
-                compatibleLocals.add(loc);
-            }
-            if (loc.getType() instanceof RefType) {
-                SootClass sClass = Util.getOrLoadSootClass(loc.getType().toString());
-                for (SootField field : sClass.getFields()) {
-                    // Is field accessible ?
-                    if (sClass == body.getMethod().getDeclaringClass() ||
-                            field.isPublic() ||
-                            field.isProtected()) {
-                        // Is field compatible ?
-                        if (field.getType() == type ||
-                                (type instanceof RefType &&
-                                        field.getType() instanceof RefType &&
-                                        type.merge(field.getType(), Scene.v()) == type)) {
-                            compatibleFields.add(field);
-                            correspondingLocals.add(loc);
-                        }
-                    }
-                }
-            }
-        }
+        LocalIndex index = LocalIndex.of(body);
+        int localsCount = index.countCompatibleLocals(type);
+        int fieldsCount = index.countCompatibleFields(type);
 
         Value val = null;
-        if (compatibleLocals.size() > 0 && rand.nextBoolean()) {
-            val = compatibleLocals.get(rand.nextUint(compatibleLocals.size()));
-        } else if (compatibleFields.size() > 0 && rand.nextBoolean()) {
-            int index = rand.nextUint(compatibleFields.size());
-            SootField field = compatibleFields.get(index);
+        if (localsCount > 0 && rand.nextBoolean()) {
+            val = index.getCompatibleLocal(type, rand.nextUint(localsCount));
+        } else if (fieldsCount > 0 && rand.nextBoolean()) {
+            // Each couple (field, local) has the same probability
+            int choice = rand.nextUint(fieldsCount);
+            SootField field = index.getCompatibleField(type, choice);
+            Local base = index.getCompatibleFieldBase(type, choice);
             Local loc = Jimple.v().newLocal("local" + rand.nextIncrement(), type);
             mutation.addLocal(loc);
             if (field.isStatic()) {
@@ -124,7 +141,7 @@ public abstract class MethodMutation extends Mutation {
             } else {
                 mutation.addUnit(
                         Jimple.v().newAssignStmt(loc,
-                                Jimple.v().newInstanceFieldRef(correspondingLocals.get(index),
+                                Jimple.v().newInstanceFieldRef(base,
                                         field.makeRef())));
             }
             val = loc;
@@ -154,7 +171,7 @@ public abstract class MethodMutation extends Mutation {
         Value arraySize = IntConstant.v(rand.nextUint(100) + 1);
         mutation.addUnit(Jimple.v().newAssignStmt(loc,
                 Jimple.v().newNewArrayExpr(baseType, arraySize)));
-        Local value0 = rand.randLocal(body.getLocals(), baseType);
+        Local value0 = rand.randLocal(LocalIndex.of(body), baseType);
         if (value0 != null) {
             mutation.addUnit(Jimple.v().newAssignStmt(Jimple.v().newArrayRef(loc, IntConstant.v(0)), value0));
         }
@@ -162,6 +179,11 @@ public abstract class MethodMutation extends Mutation {
     }
 
     protected Local genObject(Body body, String strObj) {
+        if (genDepth >= ConstructionRecipes.MAX_DEPTH ||
+                mutation.getUnits().size() >= ConstructionRecipes.MAX_UNITS) {
+            // Objects too long to build are replaced by null
+            return null;
+        }
         SootClass clazz = Util.getOrLoadSootClass(strObj);
         if (!clazz.isPublic()) {
             return null;
@@ -189,7 +211,7 @@ public abstract class MethodMutation extends Mutation {
         // In case its the MethodHandle class use MethodHandles.Lookup nested class
         if (clazz.getName().equals("java.lang.invoke.MethodHandle")) {
             SootClass lookupClass = Util.getOrLoadSootClass("java.lang.invoke.MethodHandles$Lookup");
-            Local lookupLocal = rand.randLocal(body.getLocals(), lookupClass.getType());
+            Local lookupLocal = rand.randLocal(LocalIndex.of(body), lookupClass.getType());
             if (lookupLocal == null) {
                 SootClass handlesClass = Util.getOrLoadSootClass("java.lang.invoke.MethodHandles");
                 SootMethod lookupMethod = handlesClass.getMethodByName("lookup");
@@ -237,58 +259,31 @@ public abstract class MethodMutation extends Mutation {
 
         if (!clazz.isConcrete()) {
             // Find another class that implements this abstract class or interface
-            String child = Util.abstractToConcrete(clazz.getName());
+            String child = ImplementorIndex.pick(clazz.getName(), rand);
             if (child != null) {
                 return this.genObject(body, child);
             }
             // try to continue anyway
         }
 
-        ArrayList<SootMethod> constructors = new ArrayList<SootMethod>();
-        Iterator<SootMethod> iterMethods = clazz.methodIterator();
-        while (iterMethods.hasNext()) {
-            SootMethod method = iterMethods.next();
-            if (method.isConstructor() && method.isPublic()) {
-                constructors.add(method);
-            }
-        }
-
-        if (constructors.size() == 0) {
-            // No constructors found. Try invoking static methods to get other
-            // type of objects.
-            // But first try to find a static method of Class<T> that return
-            // a type T.
-            ArrayList<SootMethod> methodsSameType = new ArrayList<SootMethod>();
-            iterMethods = clazz.methodIterator();
-            while (iterMethods.hasNext()) {
-                SootMethod method = iterMethods.next();
-                if (method.isPublic() && method.isStatic()) {
-                    if (method.getReturnType() == clazz.getType()) {
-                        methodsSameType.add(method);
-                    }
-                    constructors.add(method);
-                }
-            }
-
-            if (constructors.size() == 0) {
-                return null;
-            } else if (methodsSameType.size() > 0) {
-                constructors = methodsSameType;
-            }
-            // else: continue with an other static method call that return an
-            // other type of object
+        SootMethod constructor = ConstructionRecipes.v().pick(clazz, rand);
+        if (constructor == null) {
+            return null;
         }
-
-        SootMethod constructor =
-            constructors.get(rand.nextUint(constructors.size()));
+        recipes.add(constructor);
         List<Type> parameterTypes = constructor.getParameterTypes();
         ArrayList<Value> parameters = new ArrayList<Value>(parameterTypes.size());
 
         // Find or generate parameters
-        for (Type param : parameterTypes) {
-            // Find a local that can meet this type
-            Value value = this.getOrGenValue(body, param);
-            parameters.add(value);
+        genDepth++;
+        try {
+            for (Type param : parameterTypes) {
+                // Find a local that can meet this type
+                Value value = this.getOrGenValue(body, param);
+                parameters.add(value);
+            }
+        } finally {
+            genDepth--;
         }
 
         Local loc = null;
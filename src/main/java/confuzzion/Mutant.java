@@ -8,6 +8,7 @@ import soot.Type;
 import soot.Unit;
 import soot.VoidType;
 import soot.baf.BafASMBackend;
+import soot.tagkit.Tag;
 import soot.jimple.AssignStmt;
 import soot.jimple.CastExpr;
 import soot.jimple.JasminClass;
@@ -17,7 +18,6 @@ import soot.util.JasminOutputStream;
 
 import java.io.ByteArrayOutputStream;
 import java.io.FileDescriptor;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -25,6 +25,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.lang.reflect.Modifier;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -34,19 +35,45 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Class Mutant corresponds to a SootClass with some methods to build the
- * class file
+ * class file. The bytecode is kept until the SootClass is modified.
  */
 public class Mutant {
     private SootClass sClass;
+    private byte[] bytecode;
+    private boolean dirty;
 
     private static final Logger logger = LoggerFactory.getLogger(Mutant.class);
 
+    /**
+     * Tag linking a SootClass to its Mutant. It is not an Attribute so it is
+     * not written in the class file.
+     */
+    private static class MutantTag implements Tag {
+        public static final String NAME = "confuzzion.MutantTag";
+
+        private final Mutant mutant;
+
+        public MutantTag(Mutant mutant) {
+            this.mutant = mutant;
+        }
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public byte[] getValue() {
+            return new byte[0];
+        }
+    }
+
     /**
      * Constructor
      * @param className ex: Test0
      */
     public Mutant(SootClass sClass) {
-        this.sClass = sClass;
+        this.setSootClass(sClass);
     }
 
     public String getClassName() {
@@ -59,6 +86,27 @@ public class Mutant {
 
     public void setSootClass(SootClass clazz) {
         sClass = clazz;
+        sClass.removeTag(MutantTag.NAME);
+        sClass.addTag(new MutantTag(this));
+        this.setDirty();
+    }
+
+    /**
+     * The class has been modified, its bytecode will be generated again
+     */
+    public void setDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Mark the Mutant of a class as modified
+     * @param sClass modified class
+     */
+    public static void setDirty(SootClass sClass) {
+        Tag tag = sClass.getTag(MutantTag.NAME);
+        if (tag != null) {
+            ((MutantTag)tag).mutant.setDirty();
+        }
     }
 
     /**
@@ -92,22 +140,27 @@ public class Mutant {
     public String toClassFile(String folder) {
         String fileName = Paths.get(folder, sClass.getShortName() + ".class").toString();
         try {
-            this.toBytecode(new FileOutputStream(fileName));
-        } catch (FileNotFoundException e) {
+            Files.write(Paths.get(fileName), this.toClass());
+        } catch (IOException e) {
             logger.error("File {}", fileName, e);
         }
         return fileName;
     }
 
     /**
-     * Build the bytecode of the class in memory
+     * Build the bytecode of the class in memory, or reuse the last one if the
+     * class has not been modified since. The returned array must not be
+     * modified.
      * @return bytecode of the class as an array or byte
      */
     public byte[] toClass() {
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        this.toBytecode(stream);
-        byte[] classContent = stream.toByteArray();
-        return classContent;
+        if (dirty || bytecode == null) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            this.toBytecode(stream);
+            bytecode = stream.toByteArray();
+            dirty = false;
+        }
+        return bytecode;
     }
 
     /**
@@ -188,6 +241,7 @@ public class Mutant {
             body.getUnits().add(Jimple.v().newReturnVoidStmt());
             clinit.setActiveBody(body);
             sClass.addMethod(clinit);
+            this.setDirty();
         }
     }
 }
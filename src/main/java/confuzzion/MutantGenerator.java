@@ -30,12 +30,15 @@ public class MutantGenerator {
     private RandomGenerator rand;
     private SootClass sClass;
     private int counter;
+    // Depth of nested genObject() calls
+    private int genDepth;
 
     private static final Logger logger = LoggerFactory.getLogger(MutantGenerator.class);
 
     public MutantGenerator(RandomGenerator rand, String className) {
         this.rand = rand;
         counter = 0;
+        genDepth = 0;
         sClass = new SootClass(className, Modifier.PUBLIC);
         Scene.v().addClass(sClass);
     }
@@ -43,8 +46,9 @@ public class MutantGenerator {
     public Mutant genMainLoader(List<Mutant> mutants) {
         //Class
         this.setSuperClass("java.lang.Object");
-        //Constructor
-        this.genConstructor("java.lang.Object");
+        //Constructor, without random draws as the main loader is not
+        //generated again by Replay
+        this.genConstructor(Util.getOrLoadSootClass("java.lang.Object").getMethod("void <init>()"));
         SootMethod constructor = sClass.getMethodByName("<init>");
         //Main
         SootMethod main = this.genMain();
@@ -101,7 +105,7 @@ public class MutantGenerator {
         //Class
         this.setSuperClass(superClass);
         //Constructors
-        this.genConstructor(superClass);
+        this.genConstructor(this.randSuperConstructor(superClass));
         //Override methods
         this.genOverrideMethods();
 
@@ -112,28 +116,13 @@ public class MutantGenerator {
         return ++counter;
     }
 
-    private void genConstructor(String superClass) {
-        //Add constructor <init>
-        String name = "<init>";
-        ArrayList<Type> parameterTypes = new ArrayList<Type>();
-        Type returnType = VoidType.v();
-        int modifiers = Modifier.PUBLIC | Modifier.CONSTRUCTOR;
-        SootMethod method =
-            new SootMethod(name,
-                           parameterTypes,
-                           returnType,
-                           modifiers);
-        JimpleBody body = Jimple.v().newBody(method);
-        method.setActiveBody(body);
-        sClass.addMethod(method);
-        //Add Test r0; statement
-        Local r0 = Jimple.v().newLocal("r0", sClass.getType());
-        body.getLocals().add(r0);
-        //Add r0 := @this: Test; statement
-        body.getUnits().add(
-            Jimple.v().newIdentityStmt(r0,
-                                       Jimple.v().newThisRef(sClass.getType())));
-        //Find super constructor
+    /**
+     * Choose a constructor of superClass, or of its first ancestor
+     * declaring constructors
+     * @param superClass name of the super class
+     * @return the constructor to call
+     */
+    private SootMethod randSuperConstructor(String superClass) {
         SootMethod constructor = null;
         String classLoopStr = superClass;
         do {
@@ -156,6 +145,30 @@ public class MutantGenerator {
                 classLoopStr = superClassLoop.getName();
             }
         } while (constructor == null);
+        return constructor;
+    }
+
+    private void genConstructor(SootMethod constructor) {
+        //Add constructor <init>
+        String name = "<init>";
+        ArrayList<Type> parameterTypes = new ArrayList<Type>();
+        Type returnType = VoidType.v();
+        int modifiers = Modifier.PUBLIC | Modifier.CONSTRUCTOR;
+        SootMethod method =
+            new SootMethod(name,
+                           parameterTypes,
+                           returnType,
+                           modifiers);
+        JimpleBody body = Jimple.v().newBody(method);
+        method.setActiveBody(body);
+        sClass.addMethod(method);
+        //Add Test r0; statement
+        Local r0 = Jimple.v().newLocal("r0", sClass.getType());
+        body.getLocals().add(r0);
+        //Add r0 := @this: Test; statement
+        body.getUnits().add(
+            Jimple.v().newIdentityStmt(r0,
+                                       Jimple.v().newThisRef(sClass.getType())));
         //Add specialinvoke r0.<superClass: void <init>(...)>(...); statement
         this.genMethodCall(body, r0, constructor);
         //Initialize some fields
@@ -392,6 +405,11 @@ public class MutantGenerator {
         Chain<Local> locals = body.getLocals();
         UnitPatchingChain units = body.getUnits();
 
+        if (genDepth >= ConstructionRecipes.MAX_DEPTH) {
+            // Objects too long to build are replaced by null
+            return null;
+        }
+
         SootClass clazz = Util.getOrLoadSootClass(strObj);
         if (!clazz.isPublic()) {
             logger.warn("Cannot build an object of the type {}", strObj);
@@ -419,88 +437,61 @@ public class MutantGenerator {
 
         if (!clazz.isConcrete()) {
             // Find another class that implements this abstract class or interface
-            String child = Util.abstractToConcrete(clazz.getName());
+            String child = ImplementorIndex.pick(clazz.getName(), rand);
             if (child != null) {
                 return this.genObject(body, child);
             }
             // try to continue anyway
         }
 
-        ArrayList<SootMethod> constructors = new ArrayList<SootMethod>();
-        Iterator<SootMethod> iterMethods = clazz.methodIterator();
-        while (iterMethods.hasNext()) {
-            SootMethod method = iterMethods.next();
-            if (method.isConstructor() && method.isPublic()) {
-                constructors.add(method);
-            }
-        }
-
-        if (constructors.size() == 0) {
-            // No constructors found. Try invoking static methods to get other
-            // type of objects.
-            // But first try to find a static method of Class<T> that return
-            // a type T.
-            ArrayList<SootMethod> methodsSameType = new ArrayList<SootMethod>();
-            iterMethods = clazz.methodIterator();
-            while (iterMethods.hasNext()) {
-                SootMethod method = iterMethods.next();
-                if (method.isPublic() && method.isStatic()) {
-                    if (method.getReturnType() == clazz.getType()) {
-                        methodsSameType.add(method);
-                    }
-                    constructors.add(method);
-                }
-            }
-
-            if (constructors.size() == 0) {
-                return null;
-            } else if (methodsSameType.size() > 0) {
-                constructors = methodsSameType;
-            }
-            // else: continue with an other static method call that return an
-            // other type of object
+        SootMethod constructor = ConstructionRecipes.v().pick(clazz, rand);
+        if (constructor == null) {
+            return null;
         }
-
-        SootMethod constructor = constructors.get(rand.nextUint(constructors.size()));
         List<Type> parameterTypes = constructor.getParameterTypes();
         ArrayList<Value> parameters = new ArrayList<Value>();
         Boolean found = false;
 
         // Find or generate parameters
-        for (Type param : parameterTypes) {
-            found = false;
-            // Find a local that can meet this type
-            for (Local loc : locals) {
-                if (loc.getType() == param) {
+        genDepth++;
+        try {
+            for (Type param : parameterTypes) {
+                found = false;
+                // Find a local that can meet this type
+                for (Local loc : locals) {
+                    if (loc.getType() == param) {
+                        parameters.add(loc);
+                        found = true;
+                        break;
+                    }
+                }
+                if (found) {
+                    continue;
+                }
+
+                // Create a primitive typed local with a constant
+                if (param instanceof PrimType) {
+                    Local loc = Jimple.v().newLocal("local" + this.nextInt(), param);
+                    locals.add(loc);
+                    units.add(Jimple.v().newAssignStmt(loc,
+                        rand.randConstant(param)));
                     parameters.add(loc);
-                    found = true;
-                    break;
+                    continue;
+                } else if (param instanceof ArrayType) {
+                    parameters.add(this.genArray(body, param));
+                    continue;
                 }
-            }
-            if (found) {
-                continue;
-            }
 
-            // Create a primitive typed local with a constant
-            if (param instanceof PrimType) {
-                Local loc = Jimple.v().newLocal("local" + this.nextInt(), param);
-                locals.add(loc);
-                units.add(Jimple.v().newAssignStmt(loc,
-                    rand.randConstant(param)));
+                // Call this method to create another object
+                Value loc = this.genObject(body, param.toString());
+                if (loc == null) {
+                    // If a parameter cannot be built use a null value.
+                    loc = NullConstant.v();
+                }
                 parameters.add(loc);
-                continue;
-            } else if (param instanceof ArrayType) {
-                parameters.add(this.genArray(body, param));
-                continue;
-            }
-
-            // Call this method to create another object
-            Value loc = this.genObject(body, param.toString());
-            if (loc == null) {
-                // If a parameter cannot be built use a null value.
-                loc = NullConstant.v();
             }
-            parameters.add(loc);
+        } finally {
+            genDepth--;
         }
 
         Local loc = null;
@@ -1,5 +1,9 @@
 package confuzzion;
 
+import soot.Value;
+
+import java.util.List;
+
 /**
  * Class Mutation describes a change
  */
@@ -19,8 +23,25 @@ public abstract class Mutation {
      */
     public abstract void undo();
 
+    /**
+     * Apply again a mutation reverted by undo()
+     */
+    public abstract void redo();
+
     /**
      * Change added constants
      */
     public abstract void randomConstants();
+
+    /**
+     * Get constants changed by randomConstants()
+     * @return current values of the constants
+     */
+    public abstract List<Value> getConstants();
+
+    /**
+     * Restore constants previously returned by getConstants()
+     * @param constants values of the constants
+     */
+    public abstract void setConstants(List<Value> constants);
 }
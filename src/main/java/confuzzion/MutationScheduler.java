@@ -0,0 +1,136 @@
+package confuzzion;
+
+/**
+ * Multi-armed bandit choosing the kind of the next mutation.
+ * The reward of a kind is its rate of useful executions (successful or
+ * violating a contract) per second of wall time, generation of the
+ * mutation and executions included. Statistics decay so that the rates
+ * follow the evolution of the program.
+ * A kind is chosen with probability (1 - exploration) * rate / sum of rates
+ * + exploration * prior, where prior is the fixed distribution of
+ * Program.randomMutation(), so that no kind is starved.
+ */
+public class MutationScheduler {
+    public static final int ADD_CLASS = 0;
+    public static final int ADD_FIELD = 1;
+    public static final int ADD_METHOD = 2;
+    public static final int ADD_LOCAL = 3;
+    public static final int ASSIGN = 4;
+    public static final int CALL_METHOD = 5;
+
+    private static final Class<?>[] KINDS = {
+        AddClassMutation.class,
+        AddFieldMutation.class,
+        AddMethodMutation.class,
+        AddLocalMutation.class,
+        AssignMutation.class,
+        CallMethodMutation.class,
+    };
+    // Probabilities of Program.randomMutation()
+    private static final double[] PRIORS = {
+        0.01,
+        0.19 * 0.999,
+        0.19 * 0.001,
+        0.8 * 0.3,
+        0.8 * 0.05,
+        0.8 * 0.65,
+    };
+
+    // Optimistic initial rate: 1 useful execution per 50 ms
+    private static final double INITIAL_REWARD = 1.0;
+    private static final double INITIAL_TIME = 0.05;
+    private static final double DECAY = 0.99;
+
+    private RandomGenerator rand;
+    private double exploration;
+    private double[] rewards;
+    private double[] times;
+    private double[] weights;
+
+    /**
+     * Constructor
+     * @param rand        random source of the choices
+     * @param exploration part of the choices following the prior distribution
+     */
+    public MutationScheduler(RandomGenerator rand, double exploration) {
+        this.rand = rand;
+        this.exploration = exploration;
+        this.rewards = new double[KINDS.length];
+        this.times = new double[KINDS.length];
+        this.weights = new double[KINDS.length];
+        for (int i = 0; i < KINDS.length; i++) {
+            rewards[i] = INITIAL_REWARD;
+            times[i] = INITIAL_TIME;
+        }
+        this.computeWeights(true);
+    }
+
+    /**
+     * Choose the kind of the next mutation. Exactly one random number is
+     * drawn, so a Replay can draw it without the statistics.
+     * @param canAddClass false if the program has its maximum number of classes
+     * @return kind of mutation, given to Program.randomMutation(int)
+     */
+    public synchronized int select(boolean canAddClass) {
+        this.computeWeights(canAddClass);
+        double target = rand.nextDouble();
+        int last = 0;
+        for (int i = 0; i < KINDS.length; i++) {
+            if (weights[i] <= 0.0) {
+                continue;
+            }
+            last = i;
+            if (target < weights[i]) {
+                return i;
+            }
+            target -= weights[i];
+        }
+        // Rounding errors
+        return last;
+    }
+
+    /**
+     * Reward a kind of mutation
+     * @param kind    kind returned by select()
+     * @param useful  true if the execution succeeded or violated a contract
+     * @param elapsed wall time in ns spent for this mutation
+     */
+    public synchronized void update(int kind, boolean useful, long elapsed) {
+        rewards[kind] = rewards[kind] * DECAY + (useful ? 1.0 : 0.0);
+        times[kind] = times[kind] * DECAY + elapsed / 1e9;
+    }
+
+    private void computeWeights(boolean canAddClass) {
+        double sumRates = 0.0;
+        double sumPriors = 0.0;
+        for (int i = 0; i < KINDS.length; i++) {
+            if (i == ADD_CLASS && !canAddClass) {
+                continue;
+            }
+            sumRates += rewards[i] / times[i];
+            sumPriors += PRIORS[i];
+        }
+        for (int i = 0; i < KINDS.length; i++) {
+            if (i == ADD_CLASS && !canAddClass) {
+                weights[i] = 0.0;
+            } else {
+                weights[i] = (1.0 - exploration) * (rewards[i] / times[i]) / sumRates +
+                        exploration * PRIORS[i] / sumPriors;
+            }
+        }
+    }
+
+    /**
+     * @param mutation class of a mutation
+     * @return current probability of this kind of mutation, -1 if it is not
+     *         chosen by the scheduler
+     */
+    public synchronized double getWeight(Class<?> mutation) {
+        for (int i = 0; i < KINDS.length; i++) {
+            if (KINDS[i].equals(mutation)) {
+                return weights[i];
+            }
+        }
+        return -1.0;
+    }
+}
@@ -0,0 +1,372 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fuzzing loop split into overlapped stages:
+ * <ul>
+ * <li>mutate, instrument and generate bytecode on the calling thread, which
+ * owns Soot;</li>
+ * <li>execute inside the JVMs of an ExecutorPool;</li>
+ * <li>classify results and commit a successful mutation on the calling
+ * thread;</li>
+ * <li>persist violations on a background thread.</li>
+ * </ul>
+ * Up to depth candidates are in flight, so bytecode of the next candidates
+ * is generated while the previous ones execute. Each candidate is generated
+ * against the program of a given generation; the generation changes when a
+ * mutation is committed or reverted, and results of older generations are
+ * recorded but never committed.
+ */
+public class PipelineRunner {
+    private ExecutorPool pool;
+    private int depth;
+    private ArrayDeque<Candidate> inFlight;
+    private ThreadPoolExecutor persister;
+    private long generation;
+    private Path resultFolder;
+    private long timeout;
+    private AdaptiveTimeout adaptiveTimeout;
+    private ExecutionCache executionCache;
+    private SyncDirectory syncDirectory;
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineRunner.class);
+
+    /**
+     * A candidate mutation and the bytecode of the program with it
+     */
+    static class Candidate {
+        private Mutation mutation;
+        private String name;
+        private long generation;
+        private MethodComplexity targetMethod;
+        private List<String> classNames;
+        private List<byte[]> bytecodes;
+        private String hash;
+        private long timeout;
+        private CompletableFuture<ExecutionResult> future;
+        private ExecutionResult result;
+        private Status status;
+        private boolean cached;
+        private ContractCheckException violation;
+
+        public Candidate(Mutation mutation, String name, long generation) {
+            this.mutation = mutation;
+            this.name = name;
+            this.generation = generation;
+            this.future = null;
+            this.result = null;
+            this.status = Status.NOTEXECUTED;
+            this.cached = false;
+            this.violation = null;
+        }
+
+        public boolean isDone() {
+            return future == null || future.isDone();
+        }
+
+        public void waitResult() {
+            if (future == null) {
+                // Not executed: result from the cache or generation failure
+                return;
+            }
+            try {
+                result = future.get();
+                result.check();
+                status = Status.SUCCESS;
+            } catch (Throwable e) {
+                Throwable cause = Util.getCause(e);
+                if (cause instanceof ContractCheckException) {
+                    status = Status.VIOLATES;
+                    violation = (ContractCheckException)cause;
+                } else if (cause instanceof InterruptedException) {
+                    status = Status.INTERRUPTED;
+                } else {
+                    logger.warn("Exception while executing program", e);
+                    status = Status.CRASHED;
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     * @param pool            executor JVMs
+     * @param depth           maximum number of candidates in flight
+     * @param resultFolder    where violations are saved
+     * @param timeout         fixed timeout in ms
+     * @param adaptiveTimeout timeout derived from latencies, may be null
+     * @param executionCache  cache of execution results, may be null
+     * @param syncDirectory   shared directory of workers, may be null
+     */
+    public PipelineRunner(ExecutorPool pool, int depth,
+            Path resultFolder, long timeout, AdaptiveTimeout adaptiveTimeout,
+            ExecutionCache executionCache, SyncDirectory syncDirectory) {
+        this.pool = pool;
+        this.depth = depth;
+        this.inFlight = new ArrayDeque<Candidate>(depth);
+        // Violations are written in order; a full queue slows down the loop
+        this.persister = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(depth),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.generation = 0;
+        this.resultFolder = resultFolder;
+        this.timeout = timeout;
+        this.adaptiveTimeout = adaptiveTimeout;
+        this.executionCache = executionCache;
+        this.syncDirectory = syncDirectory;
+    }
+
+    /**
+     * Generate a new candidate, then classify the candidates already
+     * executed. Waits for the oldest candidate when depth candidates are in
+     * flight.
+     * @param program      the program to mutate
+     * @param contracts    contracts checked by each candidate
+     * @param rand         the RandomGenerator of the program
+     * @param statusScreen receives the status of each candidate
+     * @param iteration    number of the iteration, used to name violations
+     * @param stackSize    number of mutations already applied
+     * @param startTime    start of the campaign in ns
+     * @return the successful candidate applied on the program or null
+     */
+    public Mutation step(Program program, ArrayList<Contract> contracts,
+            RandomGenerator rand, StatusScreen statusScreen,
+            long iteration, int stackSize, long startTime) {
+        Candidate candidate = this.generate(program, contracts, rand, statusScreen, iteration);
+        if (candidate != null) {
+            inFlight.add(candidate);
+        }
+
+        Mutation committed = null;
+        while (!inFlight.isEmpty() && (inFlight.size() >= depth || inFlight.peek().isDone())) {
+            Candidate head = inFlight.poll();
+            head.waitResult();
+            if (this.classify(program, contracts, rand, statusScreen, head, stackSize, startTime)) {
+                committed = head.mutation;
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * Candidates in flight must not be committed anymore, as the program
+     * was modified outside of the pipeline
+     */
+    public void invalidate() {
+        generation++;
+    }
+
+    /**
+     * Record the candidates still in flight without committing them, before
+     * the program is replaced
+     * @param program      the program being mutated
+     * @param contracts    contracts checked by each candidate
+     * @param rand         the RandomGenerator of the program
+     * @param statusScreen receives the status of each candidate
+     * @param stackSize    number of mutations applied
+     * @param startTime    start of the campaign in ns
+     */
+    public void drain(Program program, ArrayList<Contract> contracts,
+            RandomGenerator rand, StatusScreen statusScreen,
+            int stackSize, long startTime) {
+        this.invalidate();
+        while (!inFlight.isEmpty()) {
+            Candidate head = inFlight.poll();
+            head.waitResult();
+            this.classify(program, contracts, rand, statusScreen, head, stackSize, startTime);
+        }
+    }
+
+    /**
+     * Record the candidates still in flight without committing them, then
+     * wait for the persistence of violations
+     * @param program      the program being mutated
+     * @param contracts    contracts checked by each candidate
+     * @param rand         the RandomGenerator of the program
+     * @param statusScreen receives the status of each candidate
+     * @param stackSize    number of mutations applied
+     * @param startTime    start of the campaign in ns
+     */
+    public void finish(Program program, ArrayList<Contract> contracts,
+            RandomGenerator rand, StatusScreen statusScreen,
+            int stackSize, long startTime) {
+        this.drain(program, contracts, rand, statusScreen, stackSize, startTime);
+        persister.shutdown();
+        try {
+            persister.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Candidate generate(Program program, ArrayList<Contract> contracts,
+            RandomGenerator rand, StatusScreen statusScreen, long iteration) {
+        Mutation mutation = null;
+        try {
+            mutation = program.randomMutation();
+        } catch (MutationException e) {
+            logger.warn("Exception while applying mutation", e);
+            e.undoMutation();
+            statusScreen.newMutation(e.getMutationClass(), Status.FAILED, 0);
+            return null;
+        }
+        logger.info("Candidate mutation: {}", mutation.getClass().toString());
+        Candidate candidate = new Candidate(mutation,
+                iteration + "-" + mutation.getClass().getSimpleName(), generation);
+        if (mutation instanceof CallMethodMutation) {
+            candidate.targetMethod = rand.getMethodComplexity(((CallMethodMutation)mutation).getCalledMethod());
+        }
+        candidate.timeout = timeout;
+        if (adaptiveTimeout != null) {
+            candidate.timeout = adaptiveTimeout.getTimeout(candidate.targetMethod);
+            statusScreen.newTimeout(candidate.timeout);
+        }
+        ArrayList<BodyMutation> contractsMutations = program.addContractsChecks(contracts, mutation);
+        try {
+            candidate.classNames = program.getClassNames();
+            candidate.bytecodes = program.toClasses();
+            if (executionCache != null) {
+                candidate.hash = program.getBytecodeHash();
+                Status cachedStatus = executionCache.get(candidate.hash);
+                if (cachedStatus != null) {
+                    candidate.status = cachedStatus;
+                    candidate.violation = executionCache.getViolation(candidate.hash);
+                    candidate.cached = true;
+                }
+            }
+            if (!candidate.cached) {
+                candidate.future = pool.submit(candidate.classNames, candidate.bytecodes, candidate.timeout);
+            }
+        } catch (Throwable e) {
+            logger.warn("Exception while generating program", e);
+            candidate.status = Status.CRASHED;
+        }
+        program.removeContractsChecks(contractsMutations);
+        mutation.undo();
+        return candidate;
+    }
+
+    /**
+     * Record the result of a candidate and commit it if it is successful and
+     * of the current generation
+     * @return true if the candidate is committed
+     */
+    private boolean classify(Program program, ArrayList<Contract> contracts,
+            RandomGenerator rand, StatusScreen statusScreen, Candidate candidate,
+            int stackSize, long startTime) {
+        boolean isExecuted = candidate.future != null;
+        if (candidate.cached) {
+            statusScreen.newCacheHit();
+        }
+        if (isExecuted && executionCache != null) {
+            executionCache.put(candidate.hash, candidate.status, candidate.violation);
+        }
+        if (candidate.result != null && adaptiveTimeout != null && candidate.status == Status.SUCCESS) {
+            // Same wall time as the main loop, from the dispatch to an
+            // executor JVM so that waiting in the queue is excluded
+            adaptiveTimeout.addLatency(candidate.targetMethod,
+                    candidate.result.getLatencyNanos() / 1000000L);
+        }
+        statusScreen.newMutation(candidate.mutation.getClass(), candidate.status, isExecuted ? 1 : 0);
+        if (candidate.mutation instanceof CallMethodMutation) {
+            rand.addMethodCallStatus(((CallMethodMutation)candidate.mutation).getCalledMethod(),
+                    candidate.status == Status.SUCCESS || candidate.status == Status.VIOLATES);
+        }
+        ConstructionRecipes.v().addStatus(candidate.mutation,
+                candidate.status == Status.SUCCESS || candidate.status == Status.VIOLATES);
+
+        boolean current = candidate.generation == generation;
+        if (candidate.status == Status.VIOLATES && candidate.cached) {
+            // Same bytecode as a violation already saved
+            logger.info("Cached violation, actual type: {}, expected type: {}",
+                    candidate.violation.getActualType(), candidate.violation.getExpectedType());
+        } else if (candidate.status == Status.VIOLATES) {
+            List<byte[]> jimples = null;
+            if (current) {
+                // Apply the candidate again to print Jimple files
+                candidate.mutation.redo();
+                ArrayList<BodyMutation> contractsMutations =
+                        program.addContractsChecks(contracts, candidate.mutation);
+                jimples = program.toJimples();
+                program.removeContractsChecks(contractsMutations);
+                candidate.mutation.undo();
+            }
+            if (candidate.violation == null) {
+                // Types unknown
+                candidate.violation = new ContractCheckException();
+            }
+            // Soot objects are only read by this thread
+            final String signature = SyncDirectory.violationSignature(candidate.mutation, candidate.violation);
+            final List<byte[]> candidateJimples = jimples;
+            final Candidate violating = candidate;
+            final String stats = String.format("Found violation in %d ns\nStacked mutations: %d\n",
+                    System.nanoTime() - startTime, stackSize);
+            persister.execute(new Runnable() {
+                @Override
+                public void run() {
+                    PipelineRunner.this.saveViolation(violating, candidateJimples, stats, signature);
+                }
+            });
+        } else if (candidate.status == Status.SUCCESS && current) {
+            candidate.mutation.redo();
+            generation++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Write a violation, called by the persistence thread
+     * @param jimples   Jimple of the classes, null if the candidate was
+     *                  generated against an older generation of the program
+     * @param stats     content of stats.txt without the types
+     * @param signature signature of the violation shared with other workers
+     */
+    private void saveViolation(Candidate candidate, List<byte[]> jimples, String stats, String signature) {
+        Path folder = Paths.get(resultFolder.toAbsolutePath().toString(), candidate.name);
+        try {
+            Files.createDirectories(folder);
+            for (int i = 0; i < candidate.classNames.size(); i++) {
+                Files.write(Paths.get(folder.toString(), candidate.classNames.get(i) + ".class"),
+                        candidate.bytecodes.get(i));
+                if (jimples != null) {
+                    Files.write(Paths.get(folder.toString(), candidate.classNames.get(i) + ".jimple"),
+                            jimples.get(i));
+                }
+            }
+            String content = stats;
+            if (candidate.violation.getActualType() != null) {
+                content += String.format("Actual type: %s\nExpected type: %s\n",
+                        candidate.violation.getActualType(), candidate.violation.getExpectedType());
+            }
+            logger.info(content);
+            Util.writeToFile(Paths.get(folder.toString(), "stats.txt").toString(), content);
+        } catch (IOException e) {
+            logger.error("Error while saving violation to {}", folder, e);
+            return;
+        }
+        if (syncDirectory != null) {
+            try {
+                if (!syncDirectory.publishViolation(signature, folder)) {
+                    Util.deleteDirectory(folder);
+                }
+            } catch (IOException e) {
+                logger.error("Error while sharing violation", e);
+            }
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package confuzzion;
 
 import soot.Body;
+import soot.Scene;
 import soot.SootClass;
 import soot.SootMethod;
 import soot.Type;
+import soot.Value;
 
-import java.lang.Thread.UncaughtExceptionHandler;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,52 +33,6 @@ public class Program {
 
     private static final Logger logger = LoggerFactory.getLogger(Program.class);
 
-    class Handler implements UncaughtExceptionHandler {
-        private Throwable e;
-
-        public Handler() {
-            e = null;
-        }
-
-        @Override
-        public void uncaughtException(Thread thread, Throwable throwable) {
-            e = throwable;
-        }
-
-        public void throwException() throws Throwable {
-            if (e != null) {
-                throw e;
-            }
-        }
-    }
-
-    class Launcher implements Runnable {
-        private ByteClassLoader loader;
-        private byte[] bytecode;
-        private String className;
-
-        public Launcher(ByteClassLoader loader, byte[] bytecode, String className) {
-            this.loader = loader;
-            this.bytecode = bytecode;
-            this.className = className;
-        }
-
-        @Override
-        public void run() {
-            try {
-                // Call method <clinit>
-                Class<?> clazz = loader.load(className, bytecode);
-                // Call method <init>
-                clazz.newInstance();
-            } catch(Throwable e) {
-                if (e instanceof InterruptedException) {
-                    Thread.currentThread().interrupt();
-                }
-                throw new RuntimeException(e);
-            }
-        }
-    }
-
     /**
      * Program constructor
      * @param rand          the RandomGenerator that will be used
@@ -117,6 +77,8 @@ public class Program {
             superClass = rand.randClassName(className, false);
         }
         Mutant addedMutant = generator.genEmptyClass(superClass);
+        // A previous class with this name may have been removed
+        TypeHierarchy.v().invalidate(addedMutant.getSootClass());
         this.mutants.add(addedMutant);
         return addedMutant;
     }
@@ -316,35 +278,51 @@ public class Program {
     }
 
     /**
-     * Generate and launch program within a separate Thread
-     * Warning: this will not kill threads within a while(true) loop. Use genAndLaunchWithJVM() instead
-     * @param timeout in milliseconds before interrupting the Thread
+     * Apply a Mutation of the kind chosen by a MutationScheduler, on a
+     * random class or method
+     * @param kind one of the kinds of MutationScheduler
+     * @return random Mutation of this kind
+     * @throws MutationException if mutation failed
+     */
+    public Mutation randomMutation(int kind) throws MutationException {
+        switch (kind) {
+        case MutationScheduler.ADD_CLASS:
+            return this.randomProgramMutation();
+        case MutationScheduler.ADD_FIELD:
+            return new AddFieldMutation(rand, this.randomSootClass());
+        case MutationScheduler.ADD_METHOD:
+            return new AddMethodMutation(rand, this.randomSootClass());
+        case MutationScheduler.ADD_LOCAL:
+            return new AddLocalMutation(rand, this.randomSootMethod());
+        case MutationScheduler.ASSIGN:
+            return new AssignMutation(rand, this.randomSootMethod());
+        case MutationScheduler.CALL_METHOD:
+        default:
+            return new CallMethodMutation(rand, this.randomSootMethod(), executedMethods, mutants);
+        }
+    }
+
+    /**
+     * @return true if a new class can be added to the program
+     */
+    public boolean canAddClass() {
+        return mutants.size() < ConfuzzionOptions.v().class_number_limit;
+    }
+
+    /**
+     * Generate and launch program within the current JVM
+     * @param executor in-process executor to use
+     * @param timeout in milliseconds before quarantining the worker thread
      * @throws Throwable can throw any type of Throwable or InterruptedException
      */
-    public void genAndLaunch(long timeout) throws Throwable {
-        ByteClassLoader loader =
-                new ByteClassLoader(Thread.currentThread().getContextClassLoader());
-        // Load and instantiate (call <init>) all other mutants
-        for (int i = mutants.size() - 1; i >= 0; i--) {
-            Mutant mut = mutants.get(i);
-            if (logger.isDebugEnabled()) {
+    public void genAndLaunch(InProcessExecutor executor, long timeout) throws Throwable {
+        if (logger.isDebugEnabled()) {
+            for (Mutant mut : mutants) {
                 logger.debug("===Class {}===", mut.getClassName());
                 logger.debug(mut.toString());
             }
-            byte[] array = mut.toClass();
-            Launcher launcher = new Launcher(loader, array, mut.getClassName());
-            Thread thread = new Thread(launcher);
-            Handler handler = new Handler();
-            thread.setUncaughtExceptionHandler(handler);
-            thread.start();
-            thread.join(timeout);
-            if (thread.isAlive()) {
-                thread.interrupt();
-                thread.stop();
-                throw new InterruptedException();
-            }
-            handler.throwException();
         }
+        executor.execute(this.getClassNames(), this.toClasses(), timeout);
     }
 
     /**
@@ -356,10 +334,140 @@ public class Program {
      */
     public void genAndLaunchWithJVM(String javahome, String folder, long timeout) throws Throwable {
         this.saveAsClassFiles(folder);
-        MutantGenerator gen = new MutantGenerator(rand, "Main");
-        Mutant mut = gen.genMainLoader(mutants);
-        mut.toClassFile(folder);
-        Util.startJVM(javahome, folder, mut.getClassName(), timeout);
+        Util.startJVM(javahome, folder, this.getClassNames(), timeout);
+    }
+
+    /**
+     * Generate and launch several variants of the constants of a mutation
+     * within one JVM. Constants of the mutation are restored to the variant
+     * selected by BatchRunner.select().
+     * @param javahome    target JVM to launch
+     * @param batchFolder folder of the batch, cleaned before use
+     * @param mutation    the mutation whose constants change between variants
+     * @param variants    number of variants, the first one uses the current constants
+     * @param timeout     in milliseconds for each variant
+     * @return result of each variant
+     * @throws Throwable
+     */
+    public ExecutionResult[] genAndLaunchBatchWithJVM(String javahome, Path batchFolder,
+            Mutation mutation, int variants, long timeout) throws Throwable {
+        if (Files.exists(batchFolder)) {
+            Util.deleteDirectory(batchFolder);
+        }
+        ArrayList<List<Value>> constants = new ArrayList<List<Value>>(variants);
+        for (int i = 0; i < variants; i++) {
+            if (i > 0) {
+                mutation.randomConstants();
+            }
+            constants.add(mutation.getConstants());
+            Path variantFolder = batchFolder.resolve(Integer.toString(i));
+            Files.createDirectories(variantFolder);
+            this.saveAsClassFiles(variantFolder.toString());
+        }
+        ExecutionResult[] results = Util.startBatchJVM(javahome, batchFolder.toString(),
+                this.getClassNames(), variants, timeout);
+        mutation.setConstants(constants.get(BatchRunner.select(results)));
+        return results;
+    }
+
+    /**
+     * Generate and launch program within a long-lived executor JVM
+     * @param executor executor JVM to use
+     * @param timeout in milliseconds before killing the executor JVM
+     * @throws Throwable
+     */
+    public void genAndLaunchWithExecutor(Executor executor, long timeout) throws Throwable {
+        if (logger.isDebugEnabled()) {
+            for (Mutant mut : mutants) {
+                logger.debug("===Class {}===", mut.getClassName());
+                logger.debug(mut.toString());
+            }
+        }
+        executor.execute(this.getClassNames(), this.toClasses(), timeout);
+    }
+
+    /**
+     * Generate and launch program within a pool of executor JVMs
+     * @param pool    executor JVMs to use
+     * @param timeout in milliseconds before killing the executor JVM
+     * @throws Throwable
+     */
+    public void genAndLaunchWithPool(ExecutorPool pool, long timeout) throws Throwable {
+        if (logger.isDebugEnabled()) {
+            for (Mutant mut : mutants) {
+                logger.debug("===Class {}===", mut.getClassName());
+                logger.debug(mut.toString());
+            }
+        }
+        pool.execute(this.getClassNames(), this.toClasses(), timeout);
+    }
+
+    /**
+     * Names of all classes of this program
+     * @return class names in the same order as toClasses()
+     */
+    public ArrayList<String> getClassNames() {
+        ArrayList<String> classNames = new ArrayList<String>(mutants.size());
+        for (Mutant mut : mutants) {
+            classNames.add(mut.getClassName());
+        }
+        return classNames;
+    }
+
+    /**
+     * Generate the bytecode of all classes of this program
+     * @return bytecode in the same order as getClassNames()
+     */
+    public ArrayList<byte[]> toClasses() {
+        ArrayList<byte[]> bytecodes = new ArrayList<byte[]>(mutants.size());
+        for (Mutant mut : mutants) {
+            bytecodes.add(mut.toClass());
+        }
+        return bytecodes;
+    }
+
+    /**
+     * Print all classes of this program as Jimple
+     * @return Jimple source in the same order as getClassNames()
+     */
+    public ArrayList<byte[]> toJimples() {
+        ArrayList<byte[]> jimples = new ArrayList<byte[]>(mutants.size());
+        for (Mutant mut : mutants) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            mut.toJimple(stream);
+            jimples.add(stream.toByteArray());
+        }
+        return jimples;
+    }
+
+    /**
+     * Generate and launch program within a separate JVM using a reused
+     * workspace folder. Only modified class files are written.
+     * @param javahome  target JVM to launch
+     * @param workspace folder of the worker
+     * @param timeout in milliseconds before killing the JVM
+     * @throws Throwable
+     */
+    public void genAndLaunchWithWorkspace(String javahome, Workspace workspace, long timeout) throws Throwable {
+        ArrayList<String> classNames = this.getClassNames();
+        for (Mutant mut : mutants) {
+            workspace.writeClass(mut.getClassName(), mut.toClass());
+        }
+        workspace.retainClasses(classNames);
+        Util.startJVM(javahome, workspace.toString(), classNames, timeout);
+    }
+
+    /**
+     * Hash of the program as it would be executed (class names and bytecode)
+     * @return hexadecimal SHA-256 digest
+     */
+    public String getBytecodeHash() {
+        ArrayList<byte[]> contents = new ArrayList<byte[]>(mutants.size() * 2);
+        for (Mutant mut : mutants) {
+            contents.add(mut.getClassName().getBytes(StandardCharsets.UTF_8));
+            contents.add(mut.toClass());
+        }
+        return Util.sha256(contents);
     }
 
     /**
@@ -372,6 +480,19 @@ public class Program {
         }
     }
 
+    /**
+     * Save a Main class instantiating all classes of this program, to run
+     * it without Confuzzion. Executions do not need it, so it is only
+     * generated for the programs which are kept.
+     * @param folder destination
+     */
+    public void saveMainLoader(String folder) {
+        MutantGenerator gen = new MutantGenerator(rand, "Main");
+        Mutant mainLoader = gen.genMainLoader(mutants);
+        mainLoader.toClassFile(folder);
+        Scene.v().removeClass(mainLoader.getSootClass());
+    }
+
     /**
      * Save all classes as Jimple source files
      * @param folder destination
@@ -10,7 +10,6 @@ import soot.Local;
 import soot.LongType;
 import soot.Modifier;
 import soot.RefType;
-import soot.Scene;
 import soot.ShortType;
 import soot.SootClass;
 import soot.SootField;
@@ -22,10 +21,20 @@ import soot.jimple.ClassConstant;
 import soot.jimple.StringConstant;
 import soot.util.Chain;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.lang.Math;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
 import java.util.Random;
 
 import org.slf4j.Logger;
@@ -44,13 +53,23 @@ public class RandomGenerator {
     private float poolFloat[] = {0.0f, 1.0f, -1.0f};
     private double poolDouble[] = {0.0, 1.0, -1.0};
 
-    private List<String> strClasses;
+    private ArrayList<String> strClasses;
+    private HashSet<String> strClassesSet;
     private ArrayList<String> strMutants;
+    // Order of creation of each mutant and of the mutants of strMutants,
+    // increasing, so that removing a mutant does not renumber the others
+    private HashMap<String, Integer> mutantOrders;
+    private ArrayList<Integer> strMutantsOrders;
+    private int mutantsCreated;
+    // Types of the locals chosen by randLocalRef()
+    private LocalIndex.TypeFilter anyRefType;
+    private LocalIndex.TypeFilter classRefType;
     private ArrayList<MethodComplexity> callableMethods;
-    private long remainingCalls;
+    // Index of each target method in callableMethods and methodScores
+    private HashMap<SootMethod, Integer> methodIndexes;
+    private WeightTree methodScores;
 
     private static final Logger logger = LoggerFactory.getLogger(RandomGenerator.class);
-    private static final long callsBeforeRefreshProbabilites = 2000;
 
     /**
      * Constructor
@@ -67,9 +86,26 @@ public class RandomGenerator {
         this.rand = rand;
         this.counter = 0;
         strClasses = new ArrayList<String>();
+        strClassesSet = new HashSet<String>();
         strMutants = new ArrayList<String>();
+        mutantOrders = new HashMap<String, Integer>();
+        strMutantsOrders = new ArrayList<Integer>();
+        mutantsCreated = 0;
+        anyRefType = new LocalIndex.TypeFilter() {
+            @Override
+            public boolean accepts(Type type) {
+                return RandomGenerator.this.isLocalRefType(type, true);
+            }
+        };
+        classRefType = new LocalIndex.TypeFilter() {
+            @Override
+            public boolean accepts(Type type) {
+                return RandomGenerator.this.isLocalRefType(type, false);
+            }
+        };
         callableMethods = new ArrayList<MethodComplexity>();
-        remainingCalls = 0;
+        methodIndexes = new HashMap<SootMethod, Integer>();
+        methodScores = new WeightTree();
 
         for (String strClass : targetClasses) {
             logger.info("Add class: {}", strClass);
@@ -83,6 +119,7 @@ public class RandomGenerator {
 
     public void addStrClass(String className) {
         strClasses.add(className);
+        strClassesSet.add(className);
         SootClass sClass = Util.getOrLoadSootClass(className);
         sClass.checkLevel(SootClass.SIGNATURES);
         Iterator<SootMethod> iterMethods = sClass.methodIterator();
@@ -93,8 +130,11 @@ public class RandomGenerator {
 
         while (iterMethods.hasNext()) {
             SootMethod method = iterMethods.next();
-            if (method.isPublic() && !method.isConstructor()) {
-                callableMethods.add(new MethodComplexity(method));
+            if (method.isPublic() && !method.isConstructor() && !methodIndexes.containsKey(method)) {
+                MethodComplexity mc = new MethodComplexity(method);
+                methodIndexes.put(method, callableMethods.size());
+                callableMethods.add(mc);
+                methodScores.add(mc.getScore());
                 logger.info("Add callable method {}", method.getSignature());
             } else if (logger.isInfoEnabled()) {
                 logger.info("Ignore method {}", method.getSignature());
@@ -103,62 +143,46 @@ public class RandomGenerator {
     }
 
     public void addMethodCallStatus(SootMethod method, boolean success) {
-        for (MethodComplexity mc : callableMethods) {
-            if (mc.getMethod().equals(method)) {
-                if (success) {
-                    mc.newSuccess();
-                } else {
-                    mc.newFailure();
-                }
-                break;
-            }
+        Integer index = methodIndexes.get(method);
+        if (index == null) {
+            return;
+        }
+        MethodComplexity mc = callableMethods.get(index);
+        if (success) {
+            mc.newSuccess();
+        } else {
+            mc.newFailure();
         }
+        methodScores.set(index, mc.getScore());
     }
 
+    /**
+     * Get the statistics of a target method
+     * @param method
+     * @return MethodComplexity of the method or null if it is not a target method
+     */
+    public MethodComplexity getMethodComplexity(SootMethod method) {
+        Integer index = methodIndexes.get(method);
+        if (index == null) {
+            return null;
+        }
+        return callableMethods.get(index);
+    }
+
+    /**
+     * Select a target method, with a probability proportional to its score
+     * unless the distribution is uniform
+     * @return the method
+     */
     public SootMethod getRandomExternalMethod() {
         if (ConfuzzionOptions.v().use_uniform_distribution_for_methods) {
             return callableMethods.get(this.nextUint(callableMethods.size())).getMethod();
         } else {
-            if (remainingCalls-- <= 0) {
-                remainingCalls = callsBeforeRefreshProbabilites;
-                double all = 0.0;
-                for (MethodComplexity mc : callableMethods) {
-                    double score = mc.getScore();
-                    all += score;
-                    mc.setProbability(score);
-                }
-
-                double target = this.nextDouble();
-                SootMethod targetMethod = null;
-                for (MethodComplexity mc : callableMethods) {
-                    double d = mc.getProbability();
-                    d /= all;
-                    mc.setProbability(d);
-                    if (targetMethod == null) {
-                        if (target <= d) {
-                            targetMethod = mc.getMethod();
-                        } else {
-                            target -= d;
-                        }
-                    }
-                }
-
-                if (targetMethod != null) {
-                    return targetMethod;
-                }
-            } else { // Use old probabilities
-                double target = this.nextDouble();
-                for (MethodComplexity mc : callableMethods) {
-                    double d = mc.getProbability();
-                    if (target <= d) {
-                        return mc.getMethod();
-                    } else {
-                        target -= d;
-                    }
-                }
+            int index = methodScores.find(this.nextDouble() * methodScores.total());
+            if (index < 0) {
+                throw new RuntimeException("No method has been found in the boundary");
             }
-
-            throw new RuntimeException("No method has been found in the boundary");
+            return callableMethods.get(index).getMethod();
         }
     }
 
@@ -166,7 +190,7 @@ public class RandomGenerator {
         // p = 1/100 => call a local method
         if (this.nextUint(100) == 0) {
             // Choose a method from this class or a further generated class
-            int index = strMutants.indexOf(className);
+            int index = this.indexOfMutant(className);
             int random = this.nextUint(strMutants.size() - index);
             String classString = strMutants.get(random + index);
             SootClass sClass = Util.getOrLoadSootClass(classString);
@@ -190,11 +214,33 @@ public class RandomGenerator {
     }
 
     public void addStrMutant(String className) {
+        mutantOrders.put(className, mutantsCreated);
         strMutants.add(className);
+        strMutantsOrders.add(mutantsCreated);
+        mutantsCreated++;
     }
 
     public void removeStrMutant(String className) {
-        strMutants.remove(className);
+        if (!mutantOrders.containsKey(className)) {
+            return;
+        }
+        int index = this.indexOfMutant(className);
+        mutantOrders.remove(className);
+        strMutants.remove(index);
+        strMutantsOrders.remove(index);
+    }
+
+    /**
+     * @param className
+     * @return index of the mutant in the order of creation, -1 if it is not
+     *         a mutant
+     */
+    private int indexOfMutant(String className) {
+        Integer order = mutantOrders.get(className);
+        if (order == null) {
+            return -1;
+        }
+        return Collections.binarySearch(strMutantsOrders, order);
     }
 
     public String getClassName() {
@@ -217,10 +263,112 @@ public class RandomGenerator {
         return pool[this.nextUint(pool.length)];
     }
 
+    /**
+     * Save the random source, the counter of names and the statistics of
+     * target methods
+     * @param state destination
+     * @throws IOException
+     */
+    public void saveState(Properties state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(rand);
+        output.close();
+        state.setProperty("random", Base64.getEncoder().encodeToString(bytes.toByteArray()));
+        state.setProperty("counter", Long.toString(counter));
+        this.saveMethodsStatistics(state);
+    }
+
+    private void saveMethodsStatistics(Properties state) {
+        for (MethodComplexity mc : callableMethods) {
+            state.setProperty("method." + mc.getMethod().getSignature(),
+                    mc.getAll() + "," + mc.getFailures());
+        }
+    }
+
+    /**
+     * Restore a state saved by saveState(). Statistics of methods which are
+     * not target methods anymore are ignored.
+     * @param state source
+     * @throws IOException
+     */
+    public void restoreState(Properties state) throws IOException {
+        byte[] bytes = Base64.getDecoder().decode(state.getProperty("random"));
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+            rand = (Random)input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } finally {
+            input.close();
+        }
+        counter = Long.parseLong(state.getProperty("counter"));
+        this.restoreMethodsStatistics(state);
+    }
+
+    private void restoreMethodsStatistics(Properties state) {
+        for (MethodComplexity mc : callableMethods) {
+            String counts = state.getProperty("method." + mc.getMethod().getSignature());
+            if (counts != null) {
+                String[] values = counts.split(",");
+                mc.setCounts(Long.parseLong(values[0]), Long.parseLong(values[1]));
+                methodScores.set(methodIndexes.get(mc.getMethod()), mc.getScore());
+            }
+        }
+    }
+
+    /**
+     * Find the target methods again after the Soot context was reset,
+     * keeping the random source, the counter of names and the statistics of
+     * target methods. Mutants must be added again, by the new Program.
+     */
+    public void resetSootContext() {
+        Properties statistics = new Properties();
+        this.saveMethodsStatistics(statistics);
+        ArrayList<String> targetClasses = new ArrayList<String>(strClasses);
+        strClasses.clear();
+        strClassesSet.clear();
+        strMutants.clear();
+        mutantOrders.clear();
+        strMutantsOrders.clear();
+        callableMethods.clear();
+        methodIndexes.clear();
+        methodScores = new WeightTree();
+        for (String strClass : targetClasses) {
+            this.addStrClass(strClass);
+        }
+        this.restoreMethodsStatistics(statistics);
+    }
+
+    /**
+     * Restart the random source from a seed, keeping the counter of names
+     * and the statistics of target methods
+     * @param seed the new seed
+     */
+    public void setSeed(long seed) {
+        rand.setSeed(seed);
+    }
+
     public long nextIncrement() {
         return counter++;
     }
 
+    /**
+     * @return next value returned by nextIncrement()
+     */
+    public long getCounter() {
+        return counter;
+    }
+
+    /**
+     * Set the next value returned by nextIncrement(), used by Replay as the
+     * executions of a campaign also use the counter
+     * @param counter next value
+     */
+    public void setCounter(long counter) {
+        this.counter = counter;
+    }
+
     public boolean nextBoolean() {
         return rand.nextBoolean();
     }
@@ -321,7 +469,7 @@ public class RandomGenerator {
         String classString = strClasses.get(this.nextUint(strClasses.size()));
         if (this.nextBoolean()) {
             // Choose a class generated after current one
-            int index = strMutants.indexOf(className);
+            int index = this.indexOfMutant(className);
             int random = this.nextUint(strMutants.size() - index);
             if (random != 0 || can_be_itself) {
                 classString = strMutants.get(random + index);
@@ -486,67 +634,53 @@ public class RandomGenerator {
     }
 
     /**
-     * Randomly choose a local from a Chain<Local>
-     * @param  locals chain of locals
-     * @return        reference to one Local or null
+     * Randomly choose a local of a body
+     * @param  index locals of the body
+     * @return       reference to one Local or null
      */
-    public Local randLocal(Chain<Local> locals) {
-        if (locals.size() <= 0) {
+    public Local randLocal(LocalIndex index) {
+        if (index.size() <= 0) {
             return null;
         }
-        int choice = this.nextUint(locals.size());
-        for (Local loc : locals) {
-            if (choice <= 0) {
-                return loc;
-            }
-            choice--;
-        }
-        return null;
+        return index.get(this.nextUint(index.size()));
     }
 
     /**
      * Randomly choose a local of the specified type
-     * @param locals
+     * @param index locals of the body
      * @param type
      * @return
      */
-    public Local randLocal(Chain<Local> locals, Type type) {
-        ArrayList<Local> localRefs = new ArrayList<Local>(10);
-        for (Local loc : locals) {
-            Type locType = loc.getType();
-            if (locType == type ||
-                    (locType instanceof RefType &&
-                            type instanceof RefType &&
-                            locType.merge(type, Scene.v()) == type)) {
-                localRefs.add(loc);
-            }
-        }
-        if (localRefs.size() <= 0) {
+    public Local randLocal(LocalIndex index, Type type) {
+        int count = index.countCompatibleLocals(type);
+        if (count <= 0) {
             return null;
         }
-        return localRefs.get(this.nextUint(localRefs.size()));
+        return index.getCompatibleLocal(type, this.nextUint(count));
     }
 
     /**
      * Randomly choose a local of type RefType that is a Mutant class or a target class
-     * @param  locals chain of locals
+     * @param  index locals of the body
      * @param  canBeAnyRefType if true then can return any RefType Local provided, not only a target class or Mutant class type
      * @return Local of type RefType
      */
-    public Local randLocalRef(Chain<Local> locals, boolean canBeAnyRefType) {
-        ArrayList<Local> localRefs = new ArrayList<Local>(10);
-        for (Local loc : locals) {
-            Type type = loc.getType();
-            if (type instanceof RefType) {
-                String className = ((RefType)type).getClassName();
-                if (canBeAnyRefType || strClasses.contains(className) || strMutants.contains(className)) {
-                    localRefs.add(loc);
-                }
-            }
-        }
-        if (localRefs.size() <= 0) {
+    public Local randLocalRef(LocalIndex index, boolean canBeAnyRefType) {
+        // The membership of a type is stable while locals of this type exist:
+        // mutants are removed after the locals using them
+        LocalIndex.TypeFilter filter = canBeAnyRefType ? anyRefType : classRefType;
+        int count = index.countLocals(filter);
+        if (count <= 0) {
             return null;
         }
-        return localRefs.get(this.nextUint(localRefs.size()));
+        return index.getLocal(filter, this.nextUint(count));
+    }
+
+    private boolean isLocalRefType(Type type, boolean canBeAnyRefType) {
+        if (!(type instanceof RefType)) {
+            return false;
+        }
+        String className = ((RefType)type).getClassName();
+        return canBeAnyRefType || strClassesSet.contains(className) || mutantOrders.containsKey(className);
     }
 }
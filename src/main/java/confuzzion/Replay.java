@@ -0,0 +1,231 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.Stack;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuild the program of a campaign at a given iteration from its journal.
+ * Mutations are generated again with the seed of the campaign, and the
+ * results of executions are read from the journal instead of executing the
+ * programs. Soot must load the same classes as the fuzzer, so the replay
+ * must run on the same java.home.
+ */
+public class Replay {
+    private static final Logger logger = LoggerFactory.getLogger(Replay.class);
+
+    public static void main(String[] args) {
+        final Options options = configParameters();
+        CommandLineParser parser = new DefaultParser();
+
+        try {
+            CommandLine line = parser.parse(options, args);
+
+            if (line.hasOption("h")) {
+                Replay.printHelp(options);
+            }
+
+            Path journalFile = Paths.get(line.getOptionValue("i"));
+            long iteration = Long.parseLong(line.getOptionValue("n", "-1"));
+            Path output;
+            if (line.hasOption("o")) {
+                output = Paths.get(line.getOptionValue("o"));
+            } else {
+                output = journalFile.toAbsolutePath().getParent().resolve(
+                        "replay-" + (iteration < 0 ? "last" : Long.toString(iteration)));
+            }
+
+            long start = System.nanoTime();
+            Program program = Replay.replay(journalFile, iteration);
+            Files.createDirectories(output);
+            program.saveAsJimpleFiles(output.toString());
+            program.saveAsClassFiles(output.toString());
+            logger.info("Program saved to {} in {} ms", output, (System.nanoTime() - start) / 1000000L);
+        } catch (ParseException e) {
+            logger.error("Options parsing failed", e);
+            Replay.printHelp(options);
+        } catch (IOException e) {
+            logger.error("Error while replaying journal", e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Rebuild the program of a campaign
+     * @param journalFile journal written with --journal
+     * @param iteration   rebuild the program at the start of this iteration,
+     *                    -1 for the program at the end of the journal
+     * @return the program
+     * @throws IOException
+     */
+    public static Program replay(Path journalFile, long iteration) throws IOException {
+        try (Journal.Reader reader = new Journal.Reader(journalFile)) {
+            Journal.Header header = reader.getHeader();
+            if (!header.javaHome.equals(System.getProperty("java.home"))) {
+                logger.warn("Journal written with java.home {}, the replay may diverge", header.javaHome);
+            }
+            ConfuzzionOptions.v().java_version = header.javaVersion;
+            ConfuzzionOptions.v().class_number_limit = header.classNumberLimit;
+            ConfuzzionOptions.v().fixed_number_of_classes = header.fixedNumberOfClasses;
+            ConfuzzionOptions.v().allow_unsafe_assignment = header.allowUnsafeAssignment;
+            ConfuzzionOptions.v().use_uniform_distribution_for_methods = header.uniformMethodsDistribution;
+
+            // Same initialization as ConfuzzionMain.startMutation()
+            ImplementorIndex.load();
+            ConfuzzionMain.resetSootContext();
+            RandomGenerator rand = new RandomGenerator(header.targets, new Random(header.seed));
+            Program program = new Program(rand, "Test", true);
+            if (header.fixedNumberOfClasses) {
+                for (int i = program.getNumberOfMutants(); i < header.classNumberLimit; i++) {
+                    program.genNewClass(true);
+                }
+            }
+
+            Stack<Mutation> mutationsStack = new Stack<Mutation>();
+            long records = 0;
+            Journal.Record record;
+            while ((record = reader.next()) != null && (iteration < 0 || record.iteration < iteration)) {
+                records++;
+                switch (record.kind) {
+                case Journal.RECORD_REVERT:
+                    int toRevert = rand.nextUint(mutationsStack.size());
+                    if (toRevert != record.reverted) {
+                        throw new IOException("Journal diverges at iteration " + record.iteration +
+                                ": " + toRevert + " mutations reverted instead of " + record.reverted);
+                    }
+                    while (toRevert-- > 0) {
+                        mutationsStack.pop().undo();
+                    }
+                    break;
+                case Journal.RECORD_FAILED:
+                    rand.setCounter(record.counter);
+                    try {
+                        Mutation mutation = Replay.randomMutation(program, rand, record);
+                        throw new IOException("Journal diverges at iteration " + record.iteration +
+                                ": " + mutation.getClass().getSimpleName() + " applied instead of failing");
+                    } catch (MutationException e) {
+                        e.undoMutation();
+                    }
+                    break;
+                case Journal.RECORD_MUTATION:
+                    rand.setCounter(record.counter);
+                    Mutation mutation;
+                    try {
+                        mutation = Replay.randomMutation(program, rand, record);
+                    } catch (MutationException e) {
+                        throw new IOException("Journal diverges at iteration " + record.iteration +
+                                ": " + record.mutationClass + " failed", e);
+                    }
+                    String targetMethod = "";
+                    if (mutation instanceof CallMethodMutation) {
+                        targetMethod = ((CallMethodMutation)mutation).getCalledMethod().getSignature();
+                    }
+                    if (!mutation.getClass().getSimpleName().equals(record.mutationClass) ||
+                            !targetMethod.equals(record.targetMethod)) {
+                        throw new IOException("Journal diverges at iteration " + record.iteration +
+                                ": " + mutation.getClass().getSimpleName() + " " + targetMethod +
+                                " instead of " + record.mutationClass + " " + record.targetMethod);
+                    }
+                    // Same random draws as the campaign, then the selected constants
+                    for (int i = 0; i < record.constantsChanges; i++) {
+                        mutation.randomConstants();
+                    }
+                    if (record.constants != null && record.constants.size() == mutation.getConstants().size()) {
+                        mutation.setConstants(record.constants);
+                    }
+                    if (record.status == Status.SUCCESS) {
+                        mutationsStack.push(mutation);
+                    } else {
+                        mutation.undo();
+                    }
+                    if (mutation instanceof CallMethodMutation) {
+                        rand.addMethodCallStatus(((CallMethodMutation)mutation).getCalledMethod(),
+                                record.status == Status.SUCCESS || record.status == Status.VIOLATES);
+                    }
+                    ConstructionRecipes.v().addStatus(mutation,
+                            record.status == Status.SUCCESS || record.status == Status.VIOLATES);
+                    break;
+                default:
+                    break;
+                }
+            }
+            logger.info("{} records replayed, {} stacked mutations", records, mutationsStack.size());
+            return program;
+        }
+    }
+
+    /**
+     * Apply the next mutation, of the kind chosen by the MutationScheduler
+     * of the campaign if there was one
+     */
+    private static Mutation randomMutation(Program program, RandomGenerator rand,
+            Journal.Record record) throws MutationException {
+        if (record.mutationKind < 0) {
+            return program.randomMutation();
+        }
+        // Random number drawn by MutationScheduler.select()
+        rand.nextDouble();
+        return program.randomMutation(record.mutationKind);
+    }
+
+    private static void printHelp(Options options) {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp("Replay [options]", options);
+        System.exit(1);
+    }
+
+    private static Options configParameters() {
+        final Option inputOption = Option.builder("i")
+                .longOpt("input")
+                .desc("Journal written by ConfuzzionMain --journal")
+                .hasArg(true)
+                .argName("journal")
+                .required(true)
+                .build();
+
+        final Option iterationOption = Option.builder("n")
+                .longOpt("iteration")
+                .desc("Rebuild the program at the start of this iteration / end of the journal by default")
+                .hasArg(true)
+                .argName("iteration")
+                .required(false)
+                .build();
+
+        final Option outputOption = Option.builder("o")
+                .longOpt("output")
+                .desc("Folder of the .jimple and .class files / replay-<iteration> next to the journal by default")
+                .hasArg(true)
+                .argName("output")
+                .required(false)
+                .build();
+
+        final Option helpOption = Option.builder("h")
+                .longOpt("help")
+                .desc("Print this message")
+                .hasArg(false)
+                .required(false)
+                .build();
+
+        final Options options = new Options();
+
+        options.addOption(inputOption);
+        options.addOption(iterationOption);
+        options.addOption(outputOption);
+        options.addOption(helpOption);
+
+        return options;
+    }
+}
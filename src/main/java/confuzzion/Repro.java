@@ -47,7 +47,7 @@ public class Repro {
             // Init Soot
             Scene.v().loadBasicClasses();
             Scene.v().extendSootClassPath(folder);
-            Scene.v().extendSootClassPath(Util.getJarPath());
+            Scene.v().extendSootClassPath(RuntimeJar.getPath());
             logger.info("Soot Classpath: {}", Scene.v().getSootClassPath());
             logger.info("java.home: {}", System.getProperty("java.home"));
 
@@ -0,0 +1,113 @@
+package confuzzion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal jar with only the classes needed by child JVMs and referenced by
+ * generated programs, used instead of the jar with all dependencies on the
+ * classpath of child JVMs and of Soot.
+ * The jar is generated once inside the temporary folder and named after the
+ * hash of its content, so all workers share the same file.
+ */
+public class RuntimeJar {
+    // Top-level and named nested classes, anonymous classes ($1, $2...) are
+    // added automatically
+    private static final Class<?>[] RUNTIME_CLASSES = {
+        BatchRunner.class,
+        ByteClassLoader.class,
+        ContractCheckException.class,
+        ExecutionResult.class,
+        ExecutionResult.BoundedOutput.class,
+        ExecutorServer.class,
+        Status.class,
+    };
+
+    private static String path = null;
+    private static final Logger logger = LoggerFactory.getLogger(RuntimeJar.class);
+
+    /**
+     * Get the path of the runtime jar, generating it if needed
+     * @return path of the runtime jar, or of the jar with all dependencies
+     *         if it cannot be generated
+     */
+    public static synchronized String getPath() {
+        if (path == null) {
+            try {
+                path = RuntimeJar.generate().toString();
+            } catch (IOException e) {
+                logger.warn("Cannot generate runtime jar, using {}", Util.getJarPath(), e);
+                path = Util.getJarPath();
+            }
+        }
+        return path;
+    }
+
+    private static Path generate() throws IOException {
+        ArrayList<String> entries = new ArrayList<String>();
+        ArrayList<byte[]> contents = new ArrayList<byte[]>();
+        for (Class<?> clazz : RUNTIME_CLASSES) {
+            String entry = clazz.getName().replace('.', '/');
+            RuntimeJar.addClass(entry, entries, contents);
+            for (int i = 1; RuntimeJar.addClass(entry + "$" + i, entries, contents); i++) {
+                // Anonymous classes and enum switch maps
+            }
+        }
+
+        ArrayList<byte[]> hashed = new ArrayList<byte[]>(contents);
+        for (String entry : entries) {
+            hashed.add(entry.getBytes(StandardCharsets.UTF_8));
+        }
+        Path jar = Paths.get(System.getProperty("java.io.tmpdir"),
+                "confuzzion-runtime-" + Util.sha256(hashed).substring(0, 16) + ".jar");
+        if (Files.exists(jar)) {
+            return jar;
+        }
+
+        // Write to a temporary file first: other workers may read the jar
+        Path tmpJar = Files.createTempFile(jar.getParent(), "confuzzion-runtime", ".tmp");
+        try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(tmpJar))) {
+            for (int i = 0; i < entries.size(); i++) {
+                output.putNextEntry(new JarEntry(entries.get(i)));
+                output.write(contents.get(i));
+                output.closeEntry();
+            }
+        }
+        Files.move(tmpJar, jar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Runtime jar: {}", jar);
+        return jar;
+    }
+
+    private static boolean addClass(String entry, ArrayList<String> entries,
+            ArrayList<byte[]> contents) throws IOException {
+        InputStream input = RuntimeJar.class.getClassLoader().getResourceAsStream(entry + ".class");
+        if (input == null) {
+            return false;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = input.read(buffer)) > 0) {
+                bytes.write(buffer, 0, length);
+            }
+            entries.add(entry + ".class");
+            contents.add(bytes.toByteArray());
+        } finally {
+            input.close();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,61 @@
+package confuzzion;
+
+import soot.G;
+
+/**
+ * Soot global object getter giving each worker thread its own G instance
+ * (and therefore its own Scene, Options, Jimple factories...).
+ * Threads without a context of their own, and threads started without one,
+ * use the shared default context. Threads started by a worker inherit the
+ * context of the worker.
+ */
+public class SootContexts implements G.GlobalObjectGetter {
+    private static SootContexts instance = null;
+
+    private G sharedContext;
+    private final InheritableThreadLocal<G> contexts;
+
+    private SootContexts() {
+        sharedContext = new G();
+        contexts = new InheritableThreadLocal<G>();
+    }
+
+    /**
+     * Install the thread-aware getter. Must be called before any Soot
+     * object is created.
+     */
+    public static synchronized void install() {
+        if (instance == null) {
+            instance = new SootContexts();
+            G.setGlobalObjectGetter(instance);
+        }
+    }
+
+    /**
+     * Give the current thread a new empty Soot context
+     */
+    public static void newContextForCurrentThread() {
+        if (instance == null) {
+            throw new IllegalStateException("SootContexts is not installed");
+        }
+        instance.contexts.set(new G());
+    }
+
+    @Override
+    public G getG() {
+        G context = contexts.get();
+        if (context == null) {
+            return sharedContext;
+        }
+        return context;
+    }
+
+    @Override
+    public void reset() {
+        if (contexts.get() == null) {
+            sharedContext = new G();
+        } else {
+            contexts.set(new G());
+        }
+    }
+}
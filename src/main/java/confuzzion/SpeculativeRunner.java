@@ -0,0 +1,257 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluate several candidate mutations of the same program in parallel.
+ * Candidates are applied one after the other on the program, their bytecode
+ * is generated and they are reverted, so Soot is only used by the calling
+ * thread. The bytecode of all candidates is then executed in parallel by
+ * the JVMs of an ExecutorPool and one successful candidate is applied again.
+ */
+public class SpeculativeRunner {
+    private ExecutorPool pool;
+    private int candidates;
+    private Path resultFolder;
+    private long timeout;
+    private AdaptiveTimeout adaptiveTimeout;
+    private ExecutionCache executionCache;
+    private SyncDirectory syncDirectory;
+
+    private static final Logger logger = LoggerFactory.getLogger(SpeculativeRunner.class);
+
+    /**
+     * A candidate mutation and the bytecode of the program with it
+     */
+    static class Candidate {
+        private Mutation mutation;
+        private MethodComplexity targetMethod;
+        private List<String> classNames;
+        private List<byte[]> bytecodes;
+        private String hash;
+        private long timeout;
+        private long launchTime;
+        private CompletableFuture<ExecutionResult> future;
+        private Status status;
+        private long latency;
+        private boolean cached;
+        private ContractCheckException violation;
+
+        public Candidate(Mutation mutation) {
+            this.mutation = mutation;
+            this.status = Status.NOTEXECUTED;
+            this.cached = false;
+            this.violation = null;
+        }
+
+        public void submit(ExecutorPool pool) {
+            launchTime = System.nanoTime();
+            future = pool.submit(classNames, bytecodes, timeout);
+        }
+
+        public Status waitResult() {
+            try {
+                future.get().check();
+                status = Status.SUCCESS;
+            } catch (Throwable e) {
+                Throwable cause = Util.getCause(e);
+                if (cause instanceof ContractCheckException) {
+                    status = Status.VIOLATES;
+                    violation = (ContractCheckException)cause;
+                } else if (cause instanceof InterruptedException) {
+                    status = Status.INTERRUPTED;
+                } else {
+                    logger.warn("Exception while executing program", e);
+                    status = Status.CRASHED;
+                }
+            }
+            latency = (System.nanoTime() - launchTime) / 1000000L;
+            return status;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param pool            executor JVMs shared with the main loop
+     * @param candidates      number of candidates evaluated in parallel
+     * @param resultFolder    where violations are saved
+     * @param timeout         fixed timeout in ms
+     * @param adaptiveTimeout timeout derived from latencies, may be null
+     * @param executionCache  cache of execution results, may be null
+     * @param syncDirectory   shared directory of workers, may be null
+     */
+    public SpeculativeRunner(ExecutorPool pool, int candidates,
+            Path resultFolder, long timeout, AdaptiveTimeout adaptiveTimeout,
+            ExecutionCache executionCache, SyncDirectory syncDirectory) {
+        this.pool = pool;
+        this.candidates = candidates;
+        this.resultFolder = resultFolder;
+        this.timeout = timeout;
+        this.adaptiveTimeout = adaptiveTimeout;
+        this.executionCache = executionCache;
+        this.syncDirectory = syncDirectory;
+    }
+
+    /**
+     * Generate, execute and record candidate mutations of the program
+     * @param program      the program to mutate
+     * @param contracts    contracts checked by each candidate
+     * @param rand         the RandomGenerator of the program
+     * @param statusScreen receives the status of each candidate
+     * @param iteration    number of the iteration, used to name violations
+     * @param stackSize    number of mutations already applied
+     * @param startTime    start of the campaign in ns
+     * @return the successful candidate applied on the program or null
+     */
+    public Mutation evaluate(Program program, ArrayList<Contract> contracts,
+            RandomGenerator rand, StatusScreen statusScreen,
+            long iteration, int stackSize, long startTime) {
+        ArrayList<Candidate> candidates = new ArrayList<Candidate>(this.candidates);
+        for (int i = 0; i < this.candidates; i++) {
+            Mutation mutation = null;
+            try {
+                mutation = program.randomMutation();
+            } catch (MutationException e) {
+                logger.warn("Exception while applying mutation", e);
+                e.undoMutation();
+                statusScreen.newMutation(e.getMutationClass(), Status.FAILED, 0);
+                continue;
+            }
+            logger.info("Candidate mutation: {}", mutation.getClass().toString());
+            Candidate candidate = new Candidate(mutation);
+            if (mutation instanceof CallMethodMutation) {
+                candidate.targetMethod = rand.getMethodComplexity(((CallMethodMutation)mutation).getCalledMethod());
+            }
+            candidate.timeout = timeout;
+            if (adaptiveTimeout != null) {
+                candidate.timeout = adaptiveTimeout.getTimeout(candidate.targetMethod);
+            }
+            ArrayList<BodyMutation> contractsMutations = program.addContractsChecks(contracts, mutation);
+            try {
+                candidate.classNames = program.getClassNames();
+                candidate.bytecodes = program.toClasses();
+                if (executionCache != null) {
+                    candidate.hash = program.getBytecodeHash();
+                    Status cachedStatus = executionCache.get(candidate.hash);
+                    if (cachedStatus != null) {
+                        candidate.status = cachedStatus;
+                        candidate.violation = executionCache.getViolation(candidate.hash);
+                        candidate.cached = true;
+                    }
+                }
+            } catch (Throwable e) {
+                logger.warn("Exception while generating program", e);
+                candidate.status = Status.CRASHED;
+            }
+            program.removeContractsChecks(contractsMutations);
+            mutation.undo();
+            candidates.add(candidate);
+        }
+
+        // Execute all candidates in parallel
+        ArrayList<Candidate> executed = new ArrayList<Candidate>(candidates.size());
+        for (Candidate candidate : candidates) {
+            if (candidate.status == Status.NOTEXECUTED) {
+                executed.add(candidate);
+                candidate.submit(pool);
+            }
+        }
+        for (Candidate candidate : executed) {
+            candidate.waitResult();
+        }
+
+        // Record results
+        Candidate committed = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            Candidate candidate = candidates.get(i);
+            boolean isExecuted = executed.contains(candidate);
+            if (candidate.cached) {
+                statusScreen.newCacheHit();
+            }
+            if (isExecuted && executionCache != null) {
+                executionCache.put(candidate.hash, candidate.status, candidate.violation);
+            }
+            if (isExecuted && adaptiveTimeout != null && candidate.status == Status.SUCCESS) {
+                adaptiveTimeout.addLatency(candidate.targetMethod, candidate.latency);
+            }
+            statusScreen.newMutation(candidate.mutation.getClass(), candidate.status, isExecuted ? 1 : 0);
+            if (candidate.mutation instanceof CallMethodMutation) {
+                rand.addMethodCallStatus(((CallMethodMutation)candidate.mutation).getCalledMethod(),
+                        candidate.status == Status.SUCCESS || candidate.status == Status.VIOLATES);
+            }
+            ConstructionRecipes.v().addStatus(candidate.mutation,
+                    candidate.status == Status.SUCCESS || candidate.status == Status.VIOLATES);
+            if (candidate.status == Status.VIOLATES && candidate.cached) {
+                // Same bytecode as a violation already saved
+                logger.info("Cached violation, actual type: {}, expected type: {}",
+                        candidate.violation.getActualType(), candidate.violation.getExpectedType());
+            } else if (candidate.status == Status.VIOLATES) {
+                this.saveViolation(program, contracts, candidate,
+                        iteration + "-" + i + "-" + candidate.mutation.getClass().getSimpleName(),
+                        stackSize, startTime);
+            } else if (candidate.status == Status.SUCCESS && committed == null) {
+                committed = candidate;
+            }
+        }
+
+        if (committed == null) {
+            return null;
+        }
+        committed.mutation.redo();
+        return committed.mutation;
+    }
+
+    private void saveViolation(Program program, ArrayList<Contract> contracts,
+            Candidate candidate, String name, int stackSize, long startTime) {
+        Path folder = Paths.get(resultFolder.toAbsolutePath().toString(), name);
+        try {
+            Files.createDirectories(folder);
+            for (int i = 0; i < candidate.classNames.size(); i++) {
+                Files.write(Paths.get(folder.toString(), candidate.classNames.get(i) + ".class"),
+                        candidate.bytecodes.get(i));
+            }
+            // Apply the candidate again to save Jimple files
+            candidate.mutation.redo();
+            ArrayList<BodyMutation> contractsMutations =
+                    program.addContractsChecks(contracts, candidate.mutation);
+            program.saveAsJimpleFiles(folder.toString());
+            program.removeContractsChecks(contractsMutations);
+            candidate.mutation.undo();
+            if (candidate.violation == null) {
+                // Types unknown
+                candidate.violation = new ContractCheckException();
+            }
+            String content = String.format("Found violation in %d ns\nStacked mutations: %d\n",
+                    System.nanoTime() - startTime, stackSize);
+            if (candidate.violation.getActualType() != null) {
+                content += String.format("Actual type: %s\nExpected type: %s\n",
+                        candidate.violation.getActualType(), candidate.violation.getExpectedType());
+            }
+            logger.info(content);
+            Util.writeToFile(Paths.get(folder.toString(), "stats.txt").toString(), content);
+        } catch (IOException e) {
+            logger.error("Error while saving violation to {}", folder, e);
+            return;
+        }
+        if (syncDirectory != null) {
+            String signature = SyncDirectory.violationSignature(candidate.mutation, candidate.violation);
+            try {
+                if (!syncDirectory.publishViolation(signature, folder)) {
+                    Util.deleteDirectory(folder);
+                }
+            } catch (IOException e) {
+                logger.error("Error while sharing violation", e);
+            }
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package confuzzion;
 
 import java.util.ArrayList;
+import java.util.Properties;
 import java.util.TimerTask;
 
 public class StatusScreen extends TimerTask {
@@ -15,6 +16,11 @@ public class StatusScreen extends TimerTask {
     private ArrayList<Class<?>> mutations;
     private boolean stalled;
     private int mutationsStackSize;
+    private long timeout;
+    private long cacheHits;
+    private ExecutorPool pool;
+    private InProcessExecutor inProcessExecutor;
+    private MutationScheduler mutationScheduler;
     private long time;
 
     private static String template =
@@ -23,8 +29,9 @@ public class StatusScreen extends TimerTask {
         "            %4d:%02d:%02d |%n" +
         "%10d total execs | %10d total mutations%n" +
         "%10d     execs/s | %10d     mutations/s%n" +
-        "               %7s | %10d    stacked muts%n%n" +
-        "       Mutation type |    Success |      Fails |    Crashed | Violations |%n";
+        "               %7s | %10d    stacked muts%n" +
+        "%10d  timeout ms | %10d      cache hits%n%s%n" +
+        "       Mutation type |    Success |      Fails |    Crashed | Violations |%s%n";
 
     public StatusScreen() {
         this.mutations = new ArrayList<Class<?>>();
@@ -34,6 +41,11 @@ public class StatusScreen extends TimerTask {
         contractViolations = new ArrayList<Long>();
         stalled = false;
         mutationsStackSize = 0;
+        timeout = 0;
+        cacheHits = 0;
+        pool = null;
+        inProcessExecutor = null;
+        mutationScheduler = null;
         time = 0;
     }
 
@@ -92,6 +104,70 @@ public class StatusScreen extends TimerTask {
         mutationsStackSize = size;
     }
 
+    public synchronized void newTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public synchronized void newCacheHit() {
+        cacheHits++;
+    }
+
+    public synchronized void setExecutorPool(ExecutorPool pool) {
+        this.pool = pool;
+    }
+
+    public synchronized void setInProcessExecutor(InProcessExecutor inProcessExecutor) {
+        this.inProcessExecutor = inProcessExecutor;
+    }
+
+    public synchronized void setMutationScheduler(MutationScheduler mutationScheduler) {
+        this.mutationScheduler = mutationScheduler;
+    }
+
+    /**
+     * Save counters to a checkpoint
+     * @param state destination
+     */
+    public synchronized void saveState(Properties state) {
+        state.setProperty("status.time", Long.toString(time));
+        state.setProperty("status.mutations", Long.toString(totalMutations + mutationsFromLastSecond));
+        state.setProperty("status.executions", Long.toString(totalExecutions + executionsFromLastSecond));
+        state.setProperty("status.cacheHits", Long.toString(cacheHits));
+        for (int i = 0; i < mutations.size(); i++) {
+            state.setProperty("status.mutation." + mutations.get(i).getName(),
+                    successMutations.get(i) + "," + failedMutations.get(i) + "," +
+                    crashedMutations.get(i) + "," + contractViolations.get(i));
+        }
+    }
+
+    /**
+     * Restore counters from a checkpoint
+     * @param state source
+     */
+    public synchronized void restoreState(Properties state) {
+        time = Long.parseLong(state.getProperty("status.time", "0"));
+        totalMutations = Long.parseLong(state.getProperty("status.mutations", "0"));
+        totalExecutions = Long.parseLong(state.getProperty("status.executions", "0"));
+        cacheHits = Long.parseLong(state.getProperty("status.cacheHits", "0"));
+        for (String key : state.stringPropertyNames()) {
+            if (!key.startsWith("status.mutation.")) {
+                continue;
+            }
+            Class<?> mutation;
+            try {
+                mutation = Class.forName(key.substring("status.mutation.".length()));
+            } catch (ClassNotFoundException e) {
+                continue;
+            }
+            String[] values = state.getProperty(key).split(",");
+            mutations.add(mutation);
+            successMutations.add(Long.parseLong(values[0]));
+            failedMutations.add(Long.parseLong(values[1]));
+            crashedMutations.add(Long.parseLong(values[2]));
+            contractViolations.add(Long.parseLong(values[3]));
+        }
+    }
+
     public synchronized void run() {
         System.out.print(this.toString());
     }
@@ -104,6 +180,16 @@ public class StatusScreen extends TimerTask {
             stalled = true;
         }
         time++;
+        String executorStatus = "";
+        if (pool != null) {
+            executorStatus = String.format("%10s   pool busy | %10d     queue depth%n",
+                pool.getBusy() + "/" + pool.getSize(),
+                pool.getQueueDepth());
+        } else if (inProcessExecutor != null) {
+            executorStatus = String.format("%10d     loaders | %10d    metaspace MB%n",
+                inProcessExecutor.getLiveLoaders(),
+                LoaderTracker.getMetaspaceUsed() / (1024 * 1024));
+        }
         String str = String.format(StatusScreen.template,
             time / 3600,
             (time % 3600) / 60,
@@ -113,14 +199,24 @@ public class StatusScreen extends TimerTask {
             executionsFromLastSecond,
             mutationsFromLastSecond,
             stalled ? "STALLED" : "",
-            mutationsStackSize);
+            mutationsStackSize,
+            timeout,
+            cacheHits,
+            executorStatus,
+            mutationScheduler != null ? "     Weight |" : "");
         for (int i = 0; i < mutations.size(); i++) {
-            str += String.format("%20s | %10d | %10d | %10d | %10d |%n",
+            str += String.format("%20s | %10d | %10d | %10d | %10d |",
                     mutations.get(i).getSimpleName(),
                     successMutations.get(i),
                     failedMutations.get(i),
                     crashedMutations.get(i),
                     contractViolations.get(i));
+            if (mutationScheduler != null) {
+                // Current probability of choosing this kind of mutation
+                double weight = mutationScheduler.getWeight(mutations.get(i));
+                str += weight < 0 ? "            |" : String.format(" %10.4f |", weight);
+            }
+            str += String.format("%n");
         }
 
         mutationsFromLastSecond = 0;
@@ -0,0 +1,155 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Folder shared between the workers of a same campaign.
+ * It contains a queue of interesting programs (as Jimple files) that workers
+ * start from or switch to, and the violations found by all workers,
+ * deduplicated by signature.
+ */
+public class SyncDirectory {
+    private Path queueFolder;
+    private Path violationsFolder;
+    private String workerName;
+    private long exported;
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncDirectory.class);
+
+    /**
+     * Constructor
+     * @param folder   shared folder
+     * @param workerId identifier of the current worker
+     * @throws IOException
+     */
+    public SyncDirectory(Path folder, int workerId) throws IOException {
+        queueFolder = Paths.get(folder.toAbsolutePath().toString(), "queue");
+        violationsFolder = Paths.get(folder.toAbsolutePath().toString(), "violations");
+        workerName = "worker" + workerId + "-" + System.currentTimeMillis();
+        exported = 0;
+        Files.createDirectories(queueFolder);
+        Files.createDirectories(violationsFolder);
+    }
+
+    public Path getQueueFolder() {
+        return queueFolder;
+    }
+
+    public Path getViolationsFolder() {
+        return violationsFolder;
+    }
+
+    /**
+     * Register a violation. Only the first worker to find a violation with a
+     * given signature gets it registered.
+     * @param signature description of the violation used for deduplication
+     * @param folder    folder containing the files of the violation
+     * @return true if the violation is new, false if it is a duplicate
+     * @throws IOException
+     */
+    public boolean publishViolation(String signature, Path folder) throws IOException {
+        Path destination = violationsFolder.resolve(
+                Util.sha256(signature.getBytes(StandardCharsets.UTF_8)));
+        try {
+            Files.createDirectory(destination);
+        } catch (FileAlreadyExistsException e) {
+            logger.info("Duplicated violation {}", signature);
+            return false;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    Files.copy(entry, destination.resolve(entry.getFileName()),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        Util.writeToFile(destination.resolve("signature.txt").toString(),
+                signature + "\nFound by " + workerName + "\n");
+        return true;
+    }
+
+    /**
+     * Signature of a violation used to find duplicates: the pair of types of
+     * the type confusion when known, else the mutation and the called method
+     * @param mutation  the mutation that leads to the violation
+     * @param violation the exception thrown by the contract check
+     * @return signature of the violation
+     */
+    public static String violationSignature(Mutation mutation, ContractCheckException violation) {
+        if (violation.getActualType() != null) {
+            return violation.getActualType() + " as " + violation.getExpectedType();
+        }
+        String signature = mutation.getClass().getSimpleName();
+        if (mutation instanceof CallMethodMutation) {
+            signature += " " + ((CallMethodMutation)mutation).getCalledMethod().getSignature();
+        }
+        return signature;
+    }
+
+    /**
+     * Add the program to the shared queue. The program is first written to a
+     * temporary folder and then moved, so other workers never read a
+     * partially written program.
+     * @param program program to export
+     * @throws IOException
+     */
+    public void publishProgram(Program program) throws IOException {
+        String name = workerName + "-" + exported++;
+        Path tmpFolder = queueFolder.resolve("." + name);
+        Files.createDirectories(tmpFolder);
+        program.saveAsJimpleFiles(tmpFolder.toString());
+        Files.move(tmpFolder, queueFolder.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Randomly choose a program in the shared queue
+     * @param rand the RandomGenerator to use
+     * @return folder of the program or null if the queue is empty
+     * @throws IOException
+     */
+    public Path pickProgram(RandomGenerator rand) throws IOException {
+        ArrayList<Path> programs = new ArrayList<Path>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(queueFolder)) {
+            for (Path entry : entries) {
+                if (!entry.getFileName().toString().startsWith(".")) {
+                    programs.add(entry);
+                }
+            }
+        }
+        if (programs.size() == 0) {
+            return null;
+        }
+        return programs.get(rand.nextUint(programs.size()));
+    }
+
+    /**
+     * Count the entries of a shared folder
+     * @param folder queue or violations folder
+     * @return number of entries
+     */
+    public static long countEntries(Path folder) {
+        long count = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) {
+                if (!entry.getFileName().toString().startsWith(".")) {
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot list folder {}", folder, e);
+        }
+        return count;
+    }
+}
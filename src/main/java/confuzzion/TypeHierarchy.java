@@ -0,0 +1,160 @@
+package confuzzion;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import soot.G;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.Type;
+
+/**
+ * Memoized class resolution and superclass queries for the Soot context of
+ * the current thread.
+ * Classes resolved by name are kept while they are in the Scene. Each class
+ * gets an id, and the ids of its superclass chain are kept in a BitSet, so
+ * the assignability tests of mutations do not walk the hierarchy as
+ * Type.merge() does. Queries follow Type.merge(): only superclasses are
+ * considered, not interfaces.
+ * Classes added or removed by mutations must be given to invalidate().
+ */
+public class TypeHierarchy {
+    private static final Map<G, TypeHierarchy> hierarchies =
+            Collections.synchronizedMap(new WeakHashMap<G, TypeHierarchy>());
+
+    private HashMap<String, SootClass> classes;
+    private HashMap<SootClass, Integer> ids;
+    // Indexed by id: the class and its superclasses, nearest first
+    private ArrayList<ArrayList<SootClass>> chains;
+    // Indexed by id: ids of the class and of its superclasses
+    private ArrayList<BitSet> ancestors;
+
+    private TypeHierarchy() {
+        this.classes = new HashMap<String, SootClass>();
+        this.ids = new HashMap<SootClass, Integer>();
+        this.chains = new ArrayList<ArrayList<SootClass>>();
+        this.ancestors = new ArrayList<BitSet>();
+    }
+
+    /**
+     * @return the hierarchy of the Soot context of the current thread
+     */
+    public static TypeHierarchy v() {
+        G context = G.v();
+        synchronized (hierarchies) {
+            TypeHierarchy hierarchy = hierarchies.get(context);
+            if (hierarchy == null) {
+                hierarchy = new TypeHierarchy();
+                hierarchies.put(context, hierarchy);
+            }
+            return hierarchy;
+        }
+    }
+
+    /**
+     * Get a class of the Scene, loading it if needed
+     * @param name name of the class
+     * @return the SootClass
+     */
+    public SootClass getClass(String name) {
+        SootClass sClass = classes.get(name);
+        if (sClass == null || !sClass.isInScene()) {
+            sClass = Scene.v().loadClassAndSupport(name);
+            classes.put(name, sClass);
+        }
+        return sClass;
+    }
+
+    /**
+     * Same result as a.merge(b, Scene.v()) == a for references types
+     * @param a   type of the destination
+     * @param b   type of the source
+     * @return true if a is b or a superclass of b
+     */
+    public boolean isSuperclassOf(RefType a, RefType b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        int idA = this.getId(a.getSootClass());
+        int idB = this.getId(b.getSootClass());
+        return ancestors.get(idB).get(idA);
+    }
+
+    /**
+     * Same result as a.merge(b, Scene.v()) for references types
+     * @param a first type
+     * @param b second type
+     * @return the nearest common superclass of a and b
+     */
+    public Type leastCommonSuperclass(RefType a, RefType b) {
+        if (a.equals(b)) {
+            return a;
+        }
+        BitSet ancestorsOfB = ancestors.get(this.getId(b.getSootClass()));
+        for (SootClass sClass : chains.get(this.getId(a.getSootClass()))) {
+            if (ancestorsOfB.get(ids.get(sClass))) {
+                return sClass.getType();
+            }
+        }
+        // Both chains end with java.lang.Object
+        return Scene.v().getObjectType();
+    }
+
+    /**
+     * Forget a class added to or removed from the Scene, and the classes
+     * extending it
+     * @param sClass the class
+     */
+    public void invalidate(SootClass sClass) {
+        classes.remove(sClass.getName());
+        Integer id = ids.get(sClass);
+        if (id == null) {
+            return;
+        }
+        Iterator<Map.Entry<SootClass, Integer>> iterator = ids.entrySet().iterator();
+        while (iterator.hasNext()) {
+            int other = iterator.next().getValue();
+            if (ancestors.get(other).get(id)) {
+                // Ids are not reused, the chain is computed again on next query
+                chains.set(other, null);
+                ancestors.set(other, null);
+                iterator.remove();
+            }
+        }
+    }
+
+    private int getId(SootClass sClass) {
+        Integer id = ids.get(sClass);
+        if (id != null) {
+            return id;
+        }
+        // Superclasses first, so that they already have an id
+        SootClass object = Scene.v().getObjectType().getSootClass();
+        SootClass superClass = sClass.getSuperclassUnsafe();
+        if (sClass != object && superClass == null) {
+            superClass = object;
+        }
+        ArrayList<SootClass> chain = new ArrayList<SootClass>();
+        chain.add(sClass);
+        BitSet bits;
+        if (sClass == object) {
+            bits = new BitSet();
+        } else {
+            int superId = this.getId(superClass);
+            chain.addAll(chains.get(superId));
+            bits = (BitSet)ancestors.get(superId).clone();
+        }
+        id = chains.size();
+        bits.set(id);
+        ids.put(sClass, id);
+        chains.add(chain);
+        ancestors.add(bits);
+        return id;
+    }
+}
@@ -1,5 +1,8 @@
 package confuzzion;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -8,31 +11,23 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import soot.Scene;
 import soot.SootClass;
 
 public class Util {
     public static final int ERRORCODE_VIOLATION = 200;
 
-    private static HashMap<String, String> childMap;
     private static final Logger logger = LoggerFactory.getLogger(Util.class);
 
-    static {
-        childMap = new HashMap<String, String>();
-        childMap.put("java.util.concurrent.BlockingQueue",
-                     "java.util.concurrent.ArrayBlockingQueue");
-    }
-
-    public static String abstractToConcrete(String className) {
-        return childMap.get(className);
-    }
-
     public static Throwable getCause(Throwable e) {
         Throwable cause = null;
         Throwable result = e;
@@ -43,8 +38,38 @@ public class Util {
         return result;
     }
 
+    /**
+     * Compute the SHA-256 digest of a content
+     * @param content
+     * @return hexadecimal string of the digest
+     */
+    public static String sha256(byte[] content) {
+        return Util.sha256(Collections.singletonList(content));
+    }
+
+    /**
+     * Compute the SHA-256 digest of several contents put end to end
+     * @param contents
+     * @return hexadecimal string of the digest
+     */
+    public static String sha256(List<byte[]> contents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (byte[] content : contents) {
+                digest.update(content);
+            }
+            StringBuilder builder = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static SootClass getOrLoadSootClass(String name) {
-        return Scene.v().loadClassAndSupport(name);
+        return TypeHierarchy.v().getClass(name);
     }
 
     public static void deleteDirectory(Path path) throws IOException {
@@ -65,13 +90,33 @@ public class Util {
         outputStream.close();
     }
 
-    public static void startJVM(String javahome, String classpath, String className, long timeoutMiliseconds) throws Exception {
-        String path = Paths.get(javahome, "bin", "java").toString();
-        ProcessBuilder processBuilder = new ProcessBuilder(path, "-cp", classpath + ":" + Util.getJarPath(), className);
+    /**
+     * Execute a program inside a new JVM with ExecutorServer. The result is
+     * read from the standard output of the JVM.
+     * @param javahome           target JVM to launch
+     * @param classpath          folder containing the classes of the program
+     * @param classNames         classes to instantiate in order
+     * @param timeoutMiliseconds time before killing the JVM
+     * @return result of the successful execution
+     * @throws ContractCheckException if the program violates a contract
+     * @throws InterruptedException if the execution timed out
+     * @throws RuntimeException if the program or the JVM crashed
+     */
+    public static ExecutionResult startJVM(String javahome, String classpath, List<String> classNames,
+            long timeoutMiliseconds) throws Exception {
+        ArrayList<String> command = new ArrayList<String>(classNames.size() + 8);
+        command.add(Paths.get(javahome, "bin", "java").toString());
+        command.addAll(CdsArchive.getOptions(javahome));
+        command.add("-cp");
+        // Runtime jar first, as recorded inside the CDS archive
+        command.add(RuntimeJar.getPath() + ":" + classpath);
+        command.add(ExecutorServer.class.getName());
+        command.addAll(classNames);
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
         if (logger.isInfoEnabled()) {
             logger.info("Command: {}", processBuilder.command());
         }
-        processBuilder.redirectOutput(new File(Paths.get(classpath, "stdout.txt").toString()));
+        // Only errors of the JVM itself, output of the program is in the result
         processBuilder.redirectError(new File(Paths.get(classpath, "stderr.txt").toString()));
         Process process = processBuilder.start();
         process.waitFor(timeoutMiliseconds, TimeUnit.MILLISECONDS);
@@ -79,13 +124,94 @@ public class Util {
             process.destroyForcibly();
             throw new InterruptedException();
         }
-        int errorCode = process.exitValue();
-        if (errorCode != 0) {
-            if (errorCode == Util.ERRORCODE_VIOLATION) {
-                throw new ContractCheckException();
+        ExecutionResult result = null;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        try {
+            if (input.readInt() == ExecutorServer.MAGIC) {
+                result = ExecutionResult.read(input);
+            }
+        } catch (EOFException e) {
+            // System.exit() or JVM crash before the result
+        } finally {
+            input.close();
+        }
+        if (result == null) {
+            throw new RuntimeException("Error code " + process.exitValue());
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("<clinit>: {} ns, <init>: {} ns, output:\n{}",
+                    result.getClinitNanos(), result.getInitNanos(), result.getOutput());
+        }
+        result.check();
+        return result;
+    }
+
+    /**
+     * Execute a batch of programs inside one JVM with BatchRunner
+     * @param javahome           target JVM to launch
+     * @param batchFolder        folder with one sub folder per program
+     * @param classNames         classes to instantiate in each program
+     * @param numberOfPrograms   number of programs of the batch
+     * @param timeoutMiliseconds timeout of each program
+     * @return result of each program, NOTEXECUTED for programs after the
+     *         end of the batch
+     * @throws Exception
+     */
+    public static ExecutionResult[] startBatchJVM(String javahome, String batchFolder, List<String> classNames,
+            int numberOfPrograms, long timeoutMiliseconds) throws Exception {
+        ArrayList<String> command = new ArrayList<String>(classNames.size() + 11);
+        command.add(Paths.get(javahome, "bin", "java").toString());
+        command.addAll(CdsArchive.getOptions(javahome));
+        command.add("-cp");
+        command.add(RuntimeJar.getPath());
+        command.add(BatchRunner.class.getName());
+        command.add(Long.toString(timeoutMiliseconds));
+        command.add(batchFolder);
+        command.add(Integer.toString(numberOfPrograms));
+        command.addAll(classNames);
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        if (logger.isInfoEnabled()) {
+            logger.info("Command: {}", processBuilder.command());
+        }
+        processBuilder.redirectOutput(new File(Paths.get(batchFolder, "stdout.txt").toString()));
+        processBuilder.redirectError(new File(Paths.get(batchFolder, "stderr.txt").toString()));
+        Process process = processBuilder.start();
+        // Each program has its own timeout, plus one for the JVM startup
+        process.waitFor(timeoutMiliseconds * (numberOfPrograms + 1), TimeUnit.MILLISECONDS);
+        boolean killed = process.isAlive();
+        if (killed) {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+
+        ExecutionResult[] results = new ExecutionResult[numberOfPrograms];
+        int executed = 0;
+        Path resultsFile = Paths.get(batchFolder, BatchRunner.RESULTS_FILE);
+        if (Files.exists(resultsFile)) {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(resultsFile)));
+            try {
+                while (executed < numberOfPrograms) {
+                    int index = input.readInt();
+                    results[index] = ExecutionResult.read(input);
+                    executed++;
+                }
+            } catch (EOFException e) {
+                // End of the batch or incomplete last result
+            } finally {
+                input.close();
             }
-            throw new RuntimeException("Error code " + errorCode);
         }
+        if (executed < numberOfPrograms &&
+                (executed == 0 || results[executed - 1].getStatus() != Status.INTERRUPTED)) {
+            // The JVM stopped during this program
+            results[executed] = new ExecutionResult(killed ? Status.INTERRUPTED : Status.CRASHED);
+            executed++;
+        }
+        for (int i = executed; i < numberOfPrograms; i++) {
+            results[i] = new ExecutionResult(Status.NOTEXECUTED);
+        }
+        return results;
     }
 
     public static String getJarPath() {
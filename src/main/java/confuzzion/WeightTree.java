@@ -0,0 +1,113 @@
+package confuzzion;
+
+/**
+ * Fenwick tree of non-negative weights, to draw an index with a probability
+ * proportional to its weight. Adding an index, changing a weight and
+ * drawing an index are done in O(log n).
+ */
+public class WeightTree {
+    private double[] weights;
+    // tree[i] is the sum of weights of indexes [i - lowbit(i), i - 1]
+    private double[] tree;
+    private int size;
+
+    public WeightTree() {
+        this.weights = new double[16];
+        this.tree = new double[17];
+        this.size = 0;
+    }
+
+    /**
+     * @return number of indexes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a new index at the end
+     * @param weight weight of the index
+     * @return the new index
+     */
+    public int add(double weight) {
+        if (size == weights.length) {
+            double[] newWeights = new double[size * 2];
+            System.arraycopy(weights, 0, newWeights, 0, size);
+            weights = newWeights;
+            double[] newTree = new double[size * 2 + 1];
+            System.arraycopy(tree, 0, newTree, 0, size + 1);
+            tree = newTree;
+        }
+        int index = size++;
+        weights[index] = weight;
+        int node = index + 1;
+        // Sum of the weights covered by the new node
+        tree[node] = weight + this.prefixSum(index) - this.prefixSum(node - (node & -node));
+        return index;
+    }
+
+    /**
+     * Change the weight of an index
+     * @param index  the index
+     * @param weight new weight
+     */
+    public void set(int index, double weight) {
+        double delta = weight - weights[index];
+        weights[index] = weight;
+        for (int node = index + 1; node <= size; node += node & -node) {
+            tree[node] += delta;
+        }
+    }
+
+    public double get(int index) {
+        return weights[index];
+    }
+
+    /**
+     * @return sum of all weights
+     */
+    public double total() {
+        return this.prefixSum(size);
+    }
+
+    /**
+     * Sum of the weights of indexes [0, end - 1]
+     * @param end number of indexes
+     * @return sum
+     */
+    public double prefixSum(int end) {
+        double sum = 0.0;
+        for (int node = end; node > 0; node -= node & -node) {
+            sum += tree[node];
+        }
+        return sum;
+    }
+
+    /**
+     * Find the index i such that prefixSum(i) <= target < prefixSum(i + 1)
+     * @param target value in [0, total())
+     * @return the index, -1 if all weights are zero
+     */
+    public int find(double target) {
+        int node = 0;
+        int step = Integer.highestOneBit(Math.max(size, 1));
+        for (; step > 0; step >>= 1) {
+            int next = node + step;
+            if (next <= size && tree[next] <= target) {
+                node = next;
+                target -= tree[next];
+            }
+        }
+        // Rounding errors may land on an index without weight
+        while (node < size && weights[node] <= 0.0) {
+            node++;
+        }
+        if (node == size) {
+            node--;
+            while (node >= 0 && weights[node] <= 0.0) {
+                node--;
+            }
+        }
+        return node;
+    }
+}
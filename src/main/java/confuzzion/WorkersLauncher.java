@@ -0,0 +1,245 @@
+package confuzzion;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Launch and supervise several workers fuzzing the same targets, either as
+ * separate processes or as threads of the current JVM.
+ * Each worker has its own output folder and random seed, and all of them
+ * share the same SyncDirectory.
+ */
+public class WorkersLauncher {
+    private Path resultFolder;
+    private Path syncFolder;
+    private int numberOfWorkers;
+    private long seed;
+    private List<String> workerArgs;
+    private Process[] workers;
+    private int[] restarts;
+    // Workers which exited to recycle their JVM, resumed from then on
+    private boolean[] recycled;
+    private boolean resume;
+
+    private static final long SUPERVISION_PERIOD = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(WorkersLauncher.class);
+
+    /**
+     * Body of a worker running inside the current JVM
+     */
+    public interface InProcessWorker {
+        public void run(int workerId, Path workerFolder, long seed, SyncDirectory syncDirectory) throws Exception;
+    }
+
+    private static String template =
+        "\033[H\033[2J" +
+        "Confuzzion workers%n%n" +
+        "            %4d:%02d:%02d |%n" +
+        "%10d     workers | %10d        restarts%n" +
+        "%10d  violations | %10d queued programs%n";
+
+    /**
+     * Constructor
+     * @param resultFolder    output folder of the campaign
+     * @param numberOfWorkers number of worker processes
+     * @param seed            random seed of the first worker
+     * @param workerArgs      command line arguments common to all worker
+     *                        processes, null for workers in the current JVM
+     */
+    public WorkersLauncher(Path resultFolder, int numberOfWorkers, long seed, List<String> workerArgs) {
+        this.resultFolder = resultFolder.toAbsolutePath();
+        this.syncFolder = Paths.get(this.resultFolder.toString(), "sync");
+        this.numberOfWorkers = numberOfWorkers;
+        this.seed = seed;
+        this.workerArgs = workerArgs;
+        this.workers = new Process[numberOfWorkers];
+        this.restarts = new int[numberOfWorkers];
+        this.recycled = new boolean[numberOfWorkers];
+        this.resume = false;
+    }
+
+    /**
+     * Resume each worker from the latest checkpoint of its folder
+     * @param resume true to resume workers
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @param afterError true if the previous process of the worker failed
+     */
+    private Process startWorker(int workerId, boolean afterError) throws IOException {
+        Path workerFolder = Paths.get(resultFolder.toString(), "worker" + workerId);
+        Files.createDirectories(workerFolder);
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String logLevel = System.getProperty("org.slf4j.simpleLogger.defaultLogLevel");
+        if (logLevel != null) {
+            command.add("-Dorg.slf4j.simpleLogger.defaultLogLevel=" + logLevel);
+        }
+        command.add("-cp");
+        command.add(Util.getJarPath());
+        command.add(ConfuzzionMain.class.getName());
+        command.addAll(workerArgs);
+        command.add("--output");
+        command.add(workerFolder.toString());
+        command.add("--sync-dir");
+        command.add(syncFolder.toString());
+        command.add("--worker-id");
+        command.add(Integer.toString(workerId));
+        if (resume || recycled[workerId]) {
+            command.add("--resume");
+            command.add(workerFolder.toString());
+            if (afterError) {
+                // Replaying the checkpoint would likely fail the same way
+                command.add("--reseed");
+            }
+        }
+        command.add("--rng-seed");
+        // Each (re)started worker gets a different seed
+        command.add(Long.toString(seed + workerId + (long)restarts[workerId] * numberOfWorkers));
+        command.add("--quiet");
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        File logFile = Paths.get(workerFolder.toString(), "worker.log").toFile();
+        processBuilder.redirectOutput(Redirect.appendTo(logFile));
+        processBuilder.redirectError(Redirect.appendTo(logFile));
+        logger.info("Starting worker {}: {}", workerId, command);
+        return processBuilder.start();
+    }
+
+    /**
+     * Start all workers and wait for them. Workers that exit with an error are
+     * restarted and will start from a program of the shared queue. Workers
+     * that exit to recycle their JVM are restarted from their checkpoint.
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        Files.createDirectories(syncFolder);
+        // Create queue and violations folders before any worker starts
+        new SyncDirectory(syncFolder, -1);
+        for (int i = 0; i < numberOfWorkers; i++) {
+            workers[i] = this.startWorker(i, false);
+        }
+
+        long time = 0;
+        int running = numberOfWorkers;
+        while (running > 0) {
+            try {
+                Thread.sleep(SUPERVISION_PERIOD);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            time++;
+            running = 0;
+            int totalRestarts = 0;
+            for (int i = 0; i < numberOfWorkers; i++) {
+                if (workers[i] != null && !workers[i].isAlive()) {
+                    int errorCode = workers[i].exitValue();
+                    if (errorCode == 0) {
+                        logger.info("Worker {} finished", i);
+                        workers[i] = null;
+                    } else if (errorCode == InProcessExecutor.RECYCLE_EXIT_CODE) {
+                        // A checkpoint is always written before recycling
+                        logger.info("Worker {} recycles its JVM, resuming", i);
+                        recycled[i] = true;
+                        restarts[i]++;
+                        workers[i] = this.startWorker(i, false);
+                    } else {
+                        logger.warn("Worker {} exited with error code {}, restarting", i, errorCode);
+                        restarts[i]++;
+                        workers[i] = this.startWorker(i, true);
+                    }
+                }
+                if (workers[i] != null) {
+                    running++;
+                }
+                totalRestarts += restarts[i];
+            }
+            this.printStatus(time, running, totalRestarts);
+        }
+
+        for (Process worker : workers) {
+            if (worker != null) {
+                worker.destroy();
+            }
+        }
+    }
+
+    /**
+     * Start all workers as threads of the current JVM and wait for them.
+     * Each thread gets its own Soot context (G), its own ConfuzzionOptions
+     * and its own RandomGenerator.
+     * @param worker body of the workers
+     * @throws IOException
+     */
+    public void runInProcess(final InProcessWorker worker) throws IOException {
+        Files.createDirectories(syncFolder);
+        new SyncDirectory(syncFolder, -1);
+        SootContexts.install();
+
+        Thread[] threads = new Thread[numberOfWorkers];
+        for (int i = 0; i < numberOfWorkers; i++) {
+            final int workerId = i;
+            final Path workerFolder = Paths.get(resultFolder.toString(), "worker" + workerId);
+            Files.createDirectories(workerFolder);
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SootContexts.newContextForCurrentThread();
+                    ConfuzzionOptions.newForCurrentThread().quiet = true;
+                    try {
+                        worker.run(workerId, workerFolder, seed + workerId,
+                                new SyncDirectory(syncFolder, workerId));
+                    } catch (Throwable e) {
+                        logger.error("Worker {} stopped", workerId, e);
+                    }
+                }
+            }, "worker" + workerId);
+            threads[i].start();
+        }
+
+        long time = 0;
+        int running = numberOfWorkers;
+        while (running > 0) {
+            try {
+                Thread.sleep(SUPERVISION_PERIOD);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            time++;
+            running = 0;
+            for (Thread thread : threads) {
+                if (thread.isAlive()) {
+                    running++;
+                }
+            }
+            this.printStatus(time, running, 0);
+        }
+    }
+
+    private void printStatus(long time, int running, int totalRestarts) {
+        if (!ConfuzzionOptions.v().quiet) {
+            System.out.print(String.format(WorkersLauncher.template,
+                    time / 3600,
+                    (time % 3600) / 60,
+                    time % 60,
+                    running,
+                    totalRestarts,
+                    SyncDirectory.countEntries(syncFolder.resolve("violations")),
+                    SyncDirectory.countEntries(syncFolder.resolve("queue"))));
+        }
+    }
+}
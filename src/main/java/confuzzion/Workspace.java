@@ -0,0 +1,91 @@
+package confuzzion;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A folder reused for every execution of a worker. Class files are only
+ * written when their content changed since the last execution.
+ */
+public class Workspace {
+    private Path folder;
+    private HashMap<String, byte[]> writtenClasses;
+
+    /**
+     * Create (or clean) the workspace folder
+     * @param folder destination folder
+     * @throws IOException
+     */
+    public Workspace(Path folder) throws IOException {
+        this.folder = folder.toAbsolutePath();
+        writtenClasses = new HashMap<String, byte[]>();
+        if (Files.exists(this.folder)) {
+            Util.deleteDirectory(this.folder);
+        }
+        Files.createDirectories(this.folder);
+    }
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * Write a class file if its content changed
+     * @param className name of the class
+     * @param bytecode  content of the class file
+     * @return true if the file has been written
+     * @throws IOException
+     */
+    public boolean writeClass(String className, byte[] bytecode) throws IOException {
+        byte[] previous = writtenClasses.get(className);
+        if (previous == bytecode || Arrays.equals(previous, bytecode)) {
+            return false;
+        }
+        Files.write(folder.resolve(className + ".class"), bytecode);
+        writtenClasses.put(className, bytecode);
+        return true;
+    }
+
+    /**
+     * Remove class files of classes that are not part of the program anymore
+     * @param classNames classes to keep
+     * @throws IOException
+     */
+    public void retainClasses(Collection<String> classNames) throws IOException {
+        Iterator<Map.Entry<String, byte[]>> iter = writtenClasses.entrySet().iterator();
+        while (iter.hasNext()) {
+            String className = iter.next().getKey();
+            if (!classNames.contains(className)) {
+                Files.deleteIfExists(folder.resolve(className + ".class"));
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Copy all files of the workspace to another folder
+     * @param destination folder that already exists
+     * @throws IOException
+     */
+    public void copyTo(Path destination) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            for (Path entry : entries) {
+                Files.copy(entry, destination.resolve(entry.getFileName()),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return folder.toString();
+    }
+}